@@ -23,6 +23,7 @@ import com.jagrosh.jmusicbot.audio.AudioHandler;
 import com.jagrosh.jmusicbot.audio.NowplayingHandler;
 import com.jagrosh.jmusicbot.audio.PlayerManager;
 import com.jagrosh.jmusicbot.gui.GUI;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
 import com.jagrosh.jmusicbot.playlist.PlaylistLoader;
 import com.jagrosh.jmusicbot.settings.SettingsManager;
 
@@ -43,6 +44,7 @@ public class Bot {
     private final PlayerManager players;
     private final PlaylistLoader playlists;
     private final NowplayingHandler nowplaying;
+    private final MetricsRegistry metrics;
 
     private boolean shuttingDown = false;
     private JDA jda;
@@ -54,6 +56,7 @@ public class Bot {
         this.settings = settings;
         this.playlists = new PlaylistLoader(config);
         this.threadpool = Executors.newSingleThreadScheduledExecutor();
+        this.metrics = new MetricsRegistry();
         this.players = new PlayerManager(this);
         this.players.init();
         this.nowplaying = new NowplayingHandler(this);
@@ -88,6 +91,10 @@ public class Bot {
         return nowplaying;
     }
 
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
     public JDA getJDA() {
         return jda;
     }
@@ -116,7 +123,7 @@ public class Bot {
                 AudioHandler ah = (AudioHandler) g.getAudioManager().getSendingHandler();
                 if (ah != null) {
                     ah.stopAndClear();
-                    ah.getPlayer().destroy();
+                    ah.destroy();
                     nowplaying.updateTopic(g.getIdLong(), ah, true);
                 }
             });
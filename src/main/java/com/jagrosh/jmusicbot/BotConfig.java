@@ -24,6 +24,7 @@ import com.typesafe.config.*;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
@@ -38,10 +39,15 @@ public class BotConfig {
     private final static String END_TOKEN = "/// END OF JMUSICBOT CONFIG ///";
 
     private Path path = null;
-    private String token, prefix, altprefix, helpWord, playlistsFolder,
+    private String token, prefix, altprefix, helpWord, playlistsFolder, frameCacheFolder,
             successEmoji, warningEmoji, errorEmoji, loadingEmoji, searchingEmoji;
-    private boolean stayInChannel, songInGame, npImages, updatealerts, useEval, dbots;
-    private long owner, maxSeconds;
+    private boolean stayInChannel, songInGame, npImages, updatealerts, useEval, dbots, adaptiveQuality,
+            sharedPlayback, normalization, nativeAudio, resolveCache, searchCache;
+    private long owner, maxSeconds, idleMinutes, frameCacheSize, autoPauseSeconds, frameBufferMemory,
+            localMapping;
+    private int loaderThreads, prefetchCount, readAhead, playlistLimit;
+    private double normalizationTarget;
+    private List<String> libraryFolders;
     private OnlineStatus status;
     private Activity game;
     private Config aliases;
@@ -92,7 +98,25 @@ public class BotConfig {
             updatealerts = config.getBoolean("updatealerts");
             useEval = config.getBoolean("eval");
             maxSeconds = config.getLong("maxtime");
+            idleMinutes = config.getLong("idletimeout");
+            autoPauseSeconds = config.getLong("autopause");
+            loaderThreads = Math.max(1, config.getInt("loaderthreads"));
+            prefetchCount = config.getInt("prefetch");
+            frameBufferMemory = config.getLong("framebuffermemory");
+            readAhead = config.getInt("readahead");
+            resolveCache = config.getBoolean("resolvecache");
+            searchCache = config.getBoolean("searchcache");
+            playlistLimit = config.getInt("playlistlimit");
             playlistsFolder = config.getString("playlistsfolder");
+            libraryFolders = config.getStringList("library");
+            localMapping = config.getLong("localmapping");
+            frameCacheFolder = config.getString("framecache.folder");
+            frameCacheSize = config.getLong("framecache.size");
+            adaptiveQuality = config.getBoolean("adaptivequality");
+            sharedPlayback = config.getBoolean("sharedplayback");
+            normalization = config.getBoolean("normalization");
+            normalizationTarget = config.getDouble("normalizationtarget");
+            nativeAudio = config.getBoolean("nativeaudio");
             aliases = config.getConfig("aliases");
             dbots = owner == 113156185389092864L;
 
@@ -231,6 +255,24 @@ public class BotConfig {
         return playlistsFolder;
     }
 
+    /**
+     * @return the folders of the local music library, empty if there is none
+     */
+    public List<String> getLibraryFolders() {
+        return libraryFolders;
+    }
+
+    public String getFrameCacheFolder() {
+        return frameCacheFolder;
+    }
+
+    /**
+     * @return the maximum size of the frame cache in megabytes, or 0 if it is disabled
+     */
+    public long getFrameCacheSize() {
+        return frameCacheSize;
+    }
+
     public boolean getDBots() {
         return dbots;
     }
@@ -243,10 +285,94 @@ public class BotConfig {
         return useEval;
     }
 
+    public boolean useAdaptiveQuality() {
+        return adaptiveQuality;
+    }
+
+    public boolean useSharedPlayback() {
+        return sharedPlayback;
+    }
+
+    /**
+     * @return how many tracks and playlists can be loaded at the same time
+     */
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    /**
+     * @return how many upcoming queue entries have their streams resolved ahead of time, or 0 to not prefetch
+     */
+    public int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    /**
+     * @return the memory all servers' audio buffers may use together, in megabytes
+     */
+    public long getFrameBufferMemory() {
+        return frameBufferMemory;
+    }
+
+    /**
+     * @return how much of the local files may stay memory mapped while nothing plays them, in megabytes
+     */
+    public long getLocalMapping() {
+        return localMapping;
+    }
+
+    /**
+     * @return how far remote streams are read ahead of playback, in kilobytes, or 0 to read them directly
+     */
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    public boolean useResolutionCache() {
+        return resolveCache;
+    }
+
+    public boolean useSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * @return how many entries a queue may hold before the rest of a playlist is left out
+     */
+    public int getPlaylistLimit() {
+        return playlistLimit;
+    }
+
+    public boolean useNativeAudio() {
+        return nativeAudio;
+    }
+
+    public boolean useNormalization() {
+        return normalization;
+    }
+
+    /**
+     * @return the loudness tracks are normalized to, in LUFS
+     */
+    public double getNormalizationTarget() {
+        return normalizationTarget;
+    }
+
     public boolean useNPImages() {
         return npImages;
     }
 
+    public long getIdleMinutes() {
+        return idleMinutes;
+    }
+
+    /**
+     * @return how long playback continues with nobody listening before it is paused, or 0 to never pause it
+     */
+    public long getAutoPauseSeconds() {
+        return autoPauseSeconds;
+    }
+
     public long getMaxSeconds() {
         return maxSeconds;
     }
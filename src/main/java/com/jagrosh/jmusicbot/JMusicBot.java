@@ -22,6 +22,7 @@ import com.jagrosh.jmusicbot.commands.admin.*;
 import com.jagrosh.jmusicbot.commands.dj.*;
 import com.jagrosh.jmusicbot.commands.general.*;
 import com.jagrosh.jmusicbot.commands.music.*;
+import com.jagrosh.jmusicbot.audio.NativeSendFactory;
 import com.jagrosh.jmusicbot.commands.owner.*;
 import com.jagrosh.jmusicbot.entities.Prompt;
 import com.jagrosh.jmusicbot.gui.GUI;
@@ -33,6 +34,7 @@ import java.util.Arrays;
 import javax.security.auth.login.LoginException;
 
 import net.dv8tion.jda.api.*;
+import net.dv8tion.jda.api.audio.factory.DefaultSendFactory;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
@@ -113,6 +115,8 @@ public class JMusicBot {
                         new MyRemoveSearchInverseCmd(bot),
                         new MyPrioritizeCmd(bot),
 
+                        new ClipCmd(bot),
+                        new FilterCmd(bot),
                         new ForceRemoveCmd(bot),
                         new ForceskipCmd(bot),
                         new MoveTrackCmd(bot),
@@ -174,6 +178,7 @@ public class JMusicBot {
                             ? OnlineStatus.INVISIBLE : OnlineStatus.DO_NOT_DISTURB)
                     .addEventListeners(cb.build(), waiter, new Listener(bot))
                     .setBulkDeleteSplittingEnabled(true)
+                    .setAudioSendFactory(config.useNativeAudio() ? new NativeSendFactory() : new DefaultSendFactory())
                     .build();
             bot.setJDA(jda);
             bot.setJDA(jda);
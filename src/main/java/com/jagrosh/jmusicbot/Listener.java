@@ -15,6 +15,7 @@
  */
 package com.jagrosh.jmusicbot;
 
+import com.jagrosh.jmusicbot.audio.AudioHandler;
 import com.jagrosh.jmusicbot.utils.OtherUtil;
 
 import java.util.concurrent.TimeUnit;
@@ -26,6 +27,8 @@ import net.dv8tion.jda.api.entities.VoiceChannel;
 import net.dv8tion.jda.api.events.ReadyEvent;
 import net.dv8tion.jda.api.events.ShutdownEvent;
 import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.api.events.guild.voice.GuildVoiceDeafenEvent;
+import net.dv8tion.jda.api.events.guild.voice.GuildVoiceUpdateEvent;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageDeleteEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.slf4j.Logger;
@@ -81,6 +84,16 @@ public class Listener extends ListenerAdapter {
         bot.getNowplayingHandler().onMessageDelete(event.getGuild(), event.getMessageIdLong());
     }
 
+    @Override
+    public void onGuildVoiceUpdate(GuildVoiceUpdateEvent event) {
+        checkListeners(event.getGuild());
+    }
+
+    @Override
+    public void onGuildVoiceDeafen(GuildVoiceDeafenEvent event) {
+        checkListeners(event.getGuild());
+    }
+
     @Override
     public void onShutdown(ShutdownEvent event) {
         bot.shutdown();
@@ -91,6 +104,12 @@ public class Listener extends ListenerAdapter {
         credit(event.getJDA());
     }
 
+    private void checkListeners(Guild guild) {
+        AudioHandler handler = (AudioHandler) guild.getAudioManager().getSendingHandler();
+        if (handler != null)
+            handler.checkListeners();
+    }
+
     // make sure people aren't adding clones to dbots
     private void credit(JDA jda) {
         Guild dbots = jda.getGuildById(110373943822540800L);
@@ -0,0 +1,81 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the frame buffer of one guild's players from its underrun history. The buffer doubles whenever the guild
+ * misses frames in the middle of a track, and halves again after a long enough period without any, so guilds playing
+ * flaky streams get deep buffers and guilds playing reliable sources keep them small.
+ * <p>
+ * Every player of the guild buffers the same duration, so the reservation covers it once for each of them.
+ * <p>
+ * Lavaplayer only reads the duration when a track starts, so a change applies from the next track on.
+ */
+public class AdaptiveFrameBuffer {
+    private static final int MIN_DURATION = 1000;
+    private static final int INITIAL_DURATION = 2000;
+    private static final int MAX_DURATION = 16000;
+    private static final long CLEAN_PERIOD = TimeUnit.MINUTES.toMillis(10);
+
+    private final FrameBufferBudget budget;
+    private int duration;
+    private int players = 1;
+    private int reserved;
+    private long lastUnderruns = -1;
+    private long cleanSince = System.currentTimeMillis();
+
+    public AdaptiveFrameBuffer(FrameBufferBudget budget) {
+        this.budget = budget;
+        this.reserved = budget.reserve(0, INITIAL_DURATION, MIN_DURATION);
+        this.duration = reserved;
+    }
+
+    public synchronized int getDuration() {
+        return duration;
+    }
+
+    /**
+     * Adds another player to the reservation, which may make the duration of every player shorter.
+     *
+     * @return the duration for all of the guild's players
+     */
+    public synchronized int addPlayer() {
+        players++;
+        resize(duration);
+        return duration;
+    }
+
+    /**
+     * @param underruns how many frames the guild has missed in total
+     * @return whether the duration changed
+     */
+    public synchronized boolean update(long underruns) {
+        long now = System.currentTimeMillis();
+        int wanted = duration;
+        if (lastUnderruns != -1 && underruns > lastUnderruns) {
+            wanted = Math.min(MAX_DURATION, duration * 2);
+            cleanSince = now;
+        } else if (now - cleanSince >= CLEAN_PERIOD) {
+            wanted = Math.max(MIN_DURATION, duration / 2);
+            cleanSince = now;
+        }
+        lastUnderruns = underruns;
+        if (wanted == duration)
+            return false;
+
+        int previous = duration;
+        resize(wanted);
+        return duration != previous;
+    }
+
+    public synchronized void release() {
+        budget.reserve(reserved, 0, 0);
+        reserved = 0;
+        duration = 0;
+    }
+
+    private void resize(int wanted) {
+        reserved = budget.reserve(reserved, wanted * players, MIN_DURATION * players);
+        duration = reserved / players;
+    }
+}
@@ -16,19 +16,28 @@
 package com.jagrosh.jmusicbot.audio;
 
 import com.jagrosh.jmusicbot.JMusicBot;
+import com.jagrosh.jmusicbot.audio.filter.FilterChainFactory;
+import com.jagrosh.jmusicbot.audio.filter.FilterSettings;
+import com.jagrosh.jmusicbot.audio.filter.Normalization;
 import com.jagrosh.jmusicbot.playlist.PlaylistLoader.Playlist;
+import com.sedmelluq.discord.lavaplayer.filter.PcmFilterFactory;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
-import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import com.jagrosh.jmusicbot.queue.FairQueue;
 import com.jagrosh.jmusicbot.queue.FairQueue.TrackFrom;
 import com.jagrosh.jmusicbot.settings.Settings;
@@ -39,30 +48,73 @@ import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.MessageBuilder;
 import net.dv8tion.jda.api.audio.AudioSendHandler;
 import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.VoiceChannel;
 
 /**
  * @author John Grosh <john.a.grosh@gmail.com>
  */
 public class AudioHandler extends AudioEventAdapter implements AudioSendHandler {
-    private final FairQueue<QueuedTrack> queue = new FairQueue<>();
+    // How close to the end of a track the next one starts buffering, and how often (in frames) that is checked.
+    private static final long PRELOAD_TIME = 10000;
+    private static final int PRELOAD_CHECK_FRAMES = 50;
+
+    private final FairQueue<QueuedTrack> queue;
     private final List<AudioTrack> defaultQueue = new LinkedList<>();
     private final Set<String> votes = new HashSet<>();
+    private final FilterSettings filterSettings;
 
     private final PlayerManager manager;
-    private final AudioPlayer audioPlayer;
+    private volatile AudioPlayer audioPlayer;
     private final long guildId;
+    private final PlaybackMetrics metrics;
+    private final AdaptiveFrameBuffer frameBuffer;
 
-    private AudioFrame lastFrame;
+    // Reused for every 20ms frame, so steady state playback doesn't allocate.
+    private final ByteBuffer buffer = ByteBuffer.allocate(StandardAudioDataFormats.DISCORD_OPUS.maximumChunkSize());
+    private final MutableAudioFrame frame = new MutableAudioFrame();
 
     private long trackStartTime;
     private List<Long> trackFromQueue;
-
-    protected AudioHandler(PlayerManager manager, Guild guild, AudioPlayer player) {
+    private volatile long lastActivity = System.currentTimeMillis();
+    // Records the frames of the playing track into the frame cache, if it should be cached.
+    private volatile OpusFrameCache.Recorder recorder;
+    // Null while no filters are on, so lavaplayer can pass Opus frames through without decoding them.
+    private volatile PcmFilterFactory filterFactory;
+    // Loudness normalization of the playing track, null if it plays at its own loudness.
+    private volatile Normalization normalization;
+    // Created when the first clip is played. Frames are only re-encoded while a clip is playing.
+    private volatile ClipMixer clipMixer;
+    private boolean mixing = false;
+
+    // The next queue entry is loaded on a second, paused player and the two are swapped when the current track ends.
+    // Events from the preload player are handled without taking the lock, since lavaplayer fires them while holding
+    // its own locks.
+    private final Object preloadLock = new Object();
+    private final Runnable preloadCheck = this::updatePreload;
+    private AudioPlayer preloadPlayer;
+    private QueuedTrack preloaded;
+    private volatile AudioTrack preloadTrack;
+    private Normalization preloadNormalization;
+    private int framesSincePreloadCheck = 0;
+
+    // Playback is paused, and so stops decoding, while nobody in the voice channel can hear it.
+    private ScheduledFuture<?> pendingAutoPause;
+    private boolean autoPaused = false;
+
+    protected AudioHandler(PlayerManager manager, Guild guild, AudioPlayer player, FairQueue<QueuedTrack> queue,
+            FilterSettings filterSettings) {
         this.manager = manager;
         this.audioPlayer = player;
+        this.queue = queue;
+        this.filterSettings = filterSettings;
         this.guildId = guild.getIdLong();
+        this.metrics = new PlaybackMetrics(manager.getBot().getMetrics(), guildId);
+        this.frameBuffer = new AdaptiveFrameBuffer(manager.getFrameBufferBudget());
+        this.frame.setBuffer(buffer);
+        player.setFrameBufferDuration(frameBuffer.getDuration());
     }
 
     public int addTrackToFront(QueuedTrack qtrack) {
@@ -72,7 +124,7 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
         if (audioPlayer.getPlayingTrack() == null) {
             TrackFrom<QueuedTrack> trackFrom = queue.pull();
             trackFromQueue = trackFrom.identifiers;
-            audioPlayer.playTrack(trackFrom.track.getTrack());
+            play(audioPlayer, manager.prepare(trackFrom.track.getTrack()));
             return index - 1;
         } else {
             return index;
@@ -86,15 +138,49 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
         if (audioPlayer.getPlayingTrack() == null) {
             TrackFrom<QueuedTrack> trackFrom = queue.pull();
             trackFromQueue = trackFrom.identifiers;
-            audioPlayer.playTrack(trackFrom.track.getTrack());
+            play(audioPlayer, manager.prepare(trackFrom.track.getTrack()));
             return index - 1;
         } else {
             return index;
         }
     }
 
+    /**
+     * Adds the tracks in order, starting the first one if nothing is playing.
+     *
+     * @return the queue position of the first track, or -1 if it started playing
+     */
+    public int addTracks(List<QueuedTrack> qtracks) {
+        if (qtracks.isEmpty())
+            return queue.size();
+        updateQueueTimes();
+        int first = -1;
+        for (QueuedTrack qtrack : qtracks) {
+            int index = queue.add(qtrack);
+            if (first < 0)
+                first = index;
+        }
+
+        if (audioPlayer.getPlayingTrack() == null) {
+            TrackFrom<QueuedTrack> trackFrom = queue.pull();
+            trackFromQueue = trackFrom.identifiers;
+            play(audioPlayer, manager.prepare(trackFrom.track.getTrack()));
+            return first - 1;
+        } else {
+            return first;
+        }
+    }
+
     public boolean seekTo(long time) {
         AudioTrack track = audioPlayer.getPlayingTrack();
+        if (track instanceof SharedAudioTrack && ((SharedAudioTrack) track).getOriginal().isSeekable()) {
+            // Leave the shared source and play a copy of our own from the new position.
+            addTime(track);
+            AudioTrack own = track.makeClone();
+            own.setPosition(time);
+            audioPlayer.startTrack(own, false);
+            return true;
+        }
         if (!track.isSeekable()) {
             return false;
         }
@@ -114,14 +200,97 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
     public void stopAndClear() {
         queue.clear();
         defaultQueue.clear();
+        synchronized (preloadLock) {
+            discardPreload();
+        }
         audioPlayer.stopTrack();
         // current = null;
     }
 
+    public void destroy() {
+        StreamPrefetcher prefetcher = manager.getStreamPrefetcher();
+        if (prefetcher != null)
+            prefetcher.forget(guildId);
+        synchronized (preloadLock) {
+            if (preloadPlayer != null)
+                preloadPlayer.destroy();
+        }
+        audioPlayer.destroy();
+        OpusFrameCache.Recorder current = recorder;
+        if (current != null)
+            current.discard();
+        ClipMixer mixer = clipMixer;
+        if (mixer != null)
+            mixer.destroy();
+        frameBuffer.release();
+    }
+
+    /**
+     * Plays a clip over the music, replacing the clip that is playing, if any.
+     */
+    public synchronized void playClip(AudioTrack clip) {
+        if (clipMixer == null) {
+            clipMixer = new ClipMixer(manager.createPlayer(), manager.getConfiguration().getOpusEncodingQuality());
+            applyFrameBuffer(frameBuffer.addPlayer());
+        }
+        touch();
+        clipMixer.play(clip, audioPlayer.getVolume());
+    }
+
+    /**
+     * @return whether a clip was playing
+     */
+    public synchronized boolean stopClip() {
+        if (clipMixer == null || !clipMixer.isActive())
+            return false;
+        clipMixer.stop();
+        return true;
+    }
+
     public boolean isMusicPlaying(JDA jda) {
         return guild(jda).getSelfMember().getVoiceState().inVoiceChannel() && audioPlayer.getPlayingTrack() != null;
     }
 
+    /**
+     * Marks the handler as in use, so it isn't reclaimed as idle.
+     */
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    public boolean isIdle(long timeout) {
+        return audioPlayer.getPlayingTrack() == null && defaultQueue.isEmpty()
+                && System.currentTimeMillis() - lastActivity >= timeout;
+    }
+
+    /**
+     * Pauses the player a while after the last listener leaves the voice channel or deafens, and resumes it as soon
+     * as someone can hear it again. Called whenever the voice states in the guild change.
+     */
+    public synchronized void checkListeners() {
+        long delay = manager.getBot().getConfig().getAutoPauseSeconds();
+        if (delay <= 0)
+            return;
+        Guild guild = guild(manager.getBot().getJDA());
+        if (guild == null)
+            return;
+
+        if (hasListeners(guild)) {
+            if (pendingAutoPause != null) {
+                pendingAutoPause.cancel(false);
+                pendingAutoPause = null;
+            }
+            if (autoPaused && audioPlayer.isPaused())
+                audioPlayer.setPaused(false);
+            autoPaused = false;
+        } else if (pendingAutoPause == null && !(autoPaused && audioPlayer.isPaused())) {
+            autoPaused = false;
+            ScheduledExecutorService threadpool = manager.getBot().getThreadpool();
+            if (!threadpool.isShutdown())
+                pendingAutoPause = threadpool.schedule(this::autoPause, delay, TimeUnit.SECONDS);
+        }
+    }
+
     public Set<String> getVotes() {
         return votes;
     }
@@ -130,6 +299,22 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
         return audioPlayer;
     }
 
+    public FilterSettings getFilterSettings() {
+        return filterSettings;
+    }
+
+    /**
+     * Applies changes to the filter settings, including to the playing track.
+     */
+    public void updateFilters() {
+        filterFactory = filtersFor(normalization);
+        audioPlayer.setFilterFactory(filterFactory);
+    }
+
+    public PlaybackMetrics getMetrics() {
+        return metrics;
+    }
+
     public long getRequester() {
         if (audioPlayer.getPlayingTrack() == null || audioPlayer.getPlayingTrack().getUserData(Long.class) == null)
             return 0;
@@ -145,7 +330,7 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
 
     public boolean playFromDefault() {
         if (!defaultQueue.isEmpty()) {
-            audioPlayer.playTrack(defaultQueue.remove(0));
+            play(audioPlayer, manager.prepare(defaultQueue.remove(0)));
             return true;
         }
         Settings settings = manager.getBot().getSettingsManager().getSettings(guildId);
@@ -155,9 +340,9 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
         Playlist pl = manager.getBot().getPlaylistLoader().getPlaylist(settings.getDefaultPlaylist());
         if (pl == null || pl.getItems().isEmpty())
             return false;
-        pl.loadTracks(manager, (at) -> {
+        pl.loadTracks(manager, guildId, (at) -> {
             if (audioPlayer.getPlayingTrack() == null)
-                audioPlayer.playTrack(at);
+                play(audioPlayer, manager.prepare(at));
             else
                 defaultQueue.add(at);
         }, () -> {
@@ -170,6 +355,28 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
     // Audio Events
     @Override
     public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason) {
+        // Only happens when a shared track is swapped for a private copy, which continues the same entry.
+        if (endReason == AudioTrackEndReason.REPLACED)
+            return;
+        if (player != audioPlayer) {
+            // The preload failed or was cleaned up, the entry will be loaded normally when it's pulled.
+            if (track == preloadTrack)
+                preloadTrack = null;
+            return;
+        }
+        metrics.onTrackEnd();
+        touch();
+        if (recorder != null) {
+            if (endReason == AudioTrackEndReason.FINISHED)
+                recorder.finish();
+            else
+                recorder.discard();
+            recorder = null;
+        }
+        LoudnessCache loudness = manager.getLoudnessCache();
+        if (normalization != null && loudness != null)
+            loudness.finish(normalization, track);
+        normalization = null;
         addTime(track);
         queue.setEffectiveDifference(trackFromQueue, 0);
 
@@ -181,6 +388,7 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
 
         if (queue.isEmpty()) {
             if (!playFromDefault()) {
+                metrics.onIdle();
                 manager.getBot().getNowplayingHandler().onTrackUpdate(guildId, null, this);
                 if (!manager.getBot().getConfig().getStay())
                     manager.getBot().closeAudioConnection(guildId);
@@ -192,16 +400,44 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
         } else {
             TrackFrom<QueuedTrack> trackFrom = queue.pull();
             trackFromQueue = trackFrom.identifiers;
-            player.playTrack(trackFrom.track.getTrack());
+            if (!playPreloaded(trackFrom.track))
+                play(player, manager.prepare(trackFrom.track.getTrack()));
         }
     }
 
     @Override
     public void onTrackStart(AudioPlayer player, AudioTrack track) {
+        if (player != audioPlayer)
+            return;
+        metrics.onTrackStart();
+        touch();
+        OpusFrameCache cache = manager.getFrameCache();
+        OpusFrameCache.Recorder previous = recorder;
+        if (previous != null)
+            previous.discard();
+        recorder = cache == null ? null : cache.startRecording(track);
         trackStartTime = track.getPosition();
         addTime(track); // Set the effective time.
         votes.clear();
         manager.getBot().getNowplayingHandler().onTrackUpdate(guildId, track, this);
+        checkListeners();
+    }
+
+    @Override
+    public void onTrackStuck(AudioPlayer player, AudioTrack track, long thresholdMs) {
+        if (player != audioPlayer)
+            return;
+        metrics.onTrackStuck();
+    }
+
+    private synchronized void autoPause() {
+        pendingAutoPause = null;
+        if (audioPlayer.getPlayingTrack() == null || audioPlayer.isPaused())
+            return;
+        // The track's position stops while paused, so the queue isn't charged for the time nobody is listening.
+        updateQueueTimes();
+        autoPaused = true;
+        audioPlayer.setPaused(true);
     }
 
     // Formatting
@@ -228,7 +464,7 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
                 eb.setTitle(track.getInfo().title);
             }
 
-            if (track instanceof YoutubeAudioTrack && manager.getBot().getConfig().useNPImages()) {
+            if (unwrap(track) instanceof YoutubeAudioTrack && manager.getBot().getConfig().useNPImages()) {
                 eb.setThumbnail("https://img.youtube.com/vi/" + track.getIdentifier() + "/mqdefault.jpg");
             }
 
@@ -294,13 +530,32 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
 
     @Override
     public boolean canProvide() {
-        lastFrame = audioPlayer.provide();
-        return lastFrame != null;
+        buffer.clear();
+        boolean provided = audioPlayer.provide(frame);
+        metrics.onFrame(provided, audioPlayer.getPlayingTrack() != null && !audioPlayer.isPaused());
+        ClipMixer mixer = clipMixer;
+        mixing = mixer != null && mixer.isActive();
+        if (mixing)
+            provided = mixer.mix(buffer, provided);
+        if (++framesSincePreloadCheck >= PRELOAD_CHECK_FRAMES) {
+            framesSincePreloadCheck = 0;
+            ScheduledExecutorService threadpool = manager.getBot().getThreadpool();
+            if (!threadpool.isShutdown())
+                threadpool.execute(preloadCheck);
+        }
+        return provided;
     }
 
     @Override
     public ByteBuffer provide20MsAudio() {
-        return ByteBuffer.wrap(lastFrame.getData());
+        buffer.flip();
+        OpusFrameCache.Recorder current = recorder;
+        if (current != null && (filterFactory != null || mixing)) {
+            current.discard();
+            recorder = null;
+        } else if (current != null && !current.append(buffer, frame.getTimecode(), audioPlayer.getVolume()))
+            recorder = null;
+        return buffer;
     }
 
     @Override
@@ -313,6 +568,152 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
         return jda.getGuildById(guildId);
     }
 
+    private static boolean hasListeners(Guild guild) {
+        VoiceChannel channel = guild.getSelfMember().getVoiceState().getChannel();
+        if (channel == null)
+            return false;
+        for (Member member : channel.getMembers()) {
+            if (!member.getUser().isBot() && !member.getVoiceState().isDeafened())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts buffering the next queue entry once the playing track is close to its end, and drops the buffered entry
+     * if the queue no longer puts it next. Also resizes the frame buffers, and keeps the stream URLs of the next few
+     * entries resolved.
+     */
+    private void updatePreload() {
+        synchronized (preloadLock) {
+            AudioTrack current = audioPlayer.getPlayingTrack();
+            QueuedTrack next = null;
+            if (current != null && !current.getInfo().isStream
+                    && current.getDuration() - current.getPosition() <= PRELOAD_TIME)
+                next = queue.peek();
+
+            if (next != preloaded) {
+                discardPreload();
+                if (next != null)
+                    startPreload(next);
+            }
+            // A paused player that is never asked for audio gets its track cleaned up by lavaplayer.
+            if (preloadTrack != null)
+                preloadPlayer.provide();
+
+            if (frameBuffer.update(metrics.getUnderruns()))
+                applyFrameBuffer(frameBuffer.getDuration());
+        }
+
+        StreamPrefetcher prefetcher = manager.getStreamPrefetcher();
+        if (prefetcher != null) {
+            List<AudioTrack> upcoming = new ArrayList<>();
+            for (QueuedTrack queued : queue.peek(prefetcher.getAhead()))
+                upcoming.add(queued.getTrack());
+            prefetcher.update(guildId, upcoming);
+        }
+    }
+
+    /**
+     * Sets the frame buffer duration of all of the guild's players, which share one reservation.
+     */
+    private void applyFrameBuffer(int duration) {
+        audioPlayer.setFrameBufferDuration(duration);
+        if (preloadPlayer != null)
+            preloadPlayer.setFrameBufferDuration(duration);
+        ClipMixer mixer = clipMixer;
+        if (mixer != null)
+            mixer.setFrameBufferDuration(duration);
+    }
+
+    private void startPreload(QueuedTrack next) {
+        if (preloadPlayer == null) {
+            preloadPlayer = manager.createPlayer();
+            preloadPlayer.addListener(this);
+            applyFrameBuffer(frameBuffer.addPlayer());
+        }
+        AudioTrack track = next.getTrack().makeClone();
+        track.setUserData(next.getTrack().getUserData());
+        track = manager.prepare(track);
+        preloadPlayer.setVolume(audioPlayer.getVolume());
+        preloadPlayer.setPaused(true);
+        preloaded = next;
+        preloadTrack = track;
+        play(preloadPlayer, track);
+    }
+
+    private void discardPreload() {
+        preloaded = null;
+        preloadTrack = null;
+        preloadNormalization = null;
+        if (preloadPlayer != null)
+            preloadPlayer.stopTrack();
+    }
+
+    /**
+     * Swaps in the preload player if it has buffered the entry that was just pulled.
+     *
+     * @return false if the entry wasn't preloaded and has to be played normally
+     */
+    private boolean playPreloaded(QueuedTrack next) {
+        AudioTrack track;
+        synchronized (preloadLock) {
+            track = preloadTrack;
+            if (next != preloaded || track == null || preloadPlayer.getPlayingTrack() != track) {
+                discardPreload();
+                return false;
+            }
+            AudioPlayer previous = audioPlayer;
+            // The filters may have changed since the preload started.
+            normalization = preloadNormalization;
+            filterFactory = filtersFor(normalization);
+            preloadPlayer.setVolume(previous.getVolume());
+            preloadPlayer.setFilterFactory(filterFactory);
+            preloadPlayer.setPaused(previous.isPaused());
+            audioPlayer = preloadPlayer;
+            preloadPlayer = previous;
+            preloaded = null;
+            preloadTrack = null;
+            preloadNormalization = null;
+        }
+        onTrackStart(audioPlayer, track);
+        return true;
+    }
+
+    /**
+     * Plays a track on one of the players, with the guild's filters and the track's loudness normalization.
+     */
+    private void play(AudioPlayer player, AudioTrack track) {
+        LoudnessCache loudness = manager.getLoudnessCache();
+        Normalization trackNormalization = loudness == null ? null : loudness.forTrack(unwrap(track));
+        PcmFilterFactory factory = filtersFor(trackNormalization);
+        if (player == audioPlayer) {
+            normalization = trackNormalization;
+            filterFactory = factory;
+        } else {
+            preloadNormalization = trackNormalization;
+        }
+        player.setFilterFactory(factory);
+        player.playTrack(track);
+    }
+
+    private PcmFilterFactory filtersFor(Normalization trackNormalization) {
+        if (filterSettings.isNeutral() && trackNormalization == null)
+            return null;
+        return new FilterChainFactory(filterSettings, trackNormalization);
+    }
+
+    /**
+     * @return the source track behind a shared or cached track
+     */
+    private static AudioTrack unwrap(AudioTrack track) {
+        if (track instanceof SharedAudioTrack)
+            return ((SharedAudioTrack) track).getOriginal();
+        if (track instanceof CachedOpusAudioTrack)
+            return ((CachedOpusAudioTrack) track).getOriginal();
+        return track;
+    }
+
     private void addTime(AudioTrack track) {
         long time = track.getPosition();
         queue.addTime(trackFromQueue, time - trackStartTime);
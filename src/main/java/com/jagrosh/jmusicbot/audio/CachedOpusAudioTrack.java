@@ -0,0 +1,52 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.nio.ByteBuffer;
+
+import com.sedmelluq.discord.lavaplayer.container.common.OpusPacketRouter;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BaseAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+/**
+ * Plays a track from the frames stored in the {@link OpusFrameCache}. Each frame is 20ms, so seeking is just picking
+ * the frame to continue from.
+ */
+public class CachedOpusAudioTrack extends BaseAudioTrack {
+    private final AudioTrack original;
+    private final OpusFrameCache.Entry entry;
+
+    CachedOpusAudioTrack(AudioTrack original, OpusFrameCache.Entry entry) {
+        super(original.getInfo());
+        this.original = original;
+        this.entry = entry;
+    }
+
+    public AudioTrack getOriginal() {
+        return original;
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor executor) throws Exception {
+        ByteBuffer view = entry.view();
+        OpusPacketRouter router = new OpusPacketRouter(executor.getProcessingContext(), 48000, 2);
+        int[] next = { 0 };
+        try {
+            executor.executeProcessingLoop(() -> {
+                while (next[0] < entry.getFrameCount()) {
+                    entry.frame(next[0]++, view);
+                    router.process(view);
+                }
+            }, position -> {
+                next[0] = (int) Math.min(position / 20, entry.getFrameCount());
+                router.seekPerformed(position, next[0] * 20L);
+            });
+        } finally {
+            router.close();
+        }
+    }
+
+    @Override
+    protected AudioTrack makeShallowClone() {
+        return original.makeClone();
+    }
+}
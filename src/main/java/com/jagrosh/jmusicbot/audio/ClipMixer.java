@@ -0,0 +1,112 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.natives.opus.OpusDecoder;
+import com.sedmelluq.discord.lavaplayer.natives.opus.OpusEncoder;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+
+/**
+ * Plays short clips over a guild's music. Clips play on a second player, and while one is playing, each music frame
+ * is decoded, mixed with the clip's and encoded again. The rest of the time the music frames pass through untouched.
+ * All buffers are allocated up front, so mixing doesn't allocate either.
+ */
+public class ClipMixer {
+    private static final AudioDataFormat FORMAT = StandardAudioDataFormats.DISCORD_OPUS;
+    private static final int SAMPLES = FORMAT.chunkSampleCount * FORMAT.channelCount;
+    // The music is turned down while a clip plays, so the clip can be heard over it.
+    private static final int MUSIC_GAIN_PERCENT = 50;
+
+    private final AudioPlayer player;
+    private final OpusDecoder musicDecoder = new OpusDecoder(FORMAT.sampleRate, FORMAT.channelCount);
+    private final OpusDecoder clipDecoder = new OpusDecoder(FORMAT.sampleRate, FORMAT.channelCount);
+    private final OpusEncoder encoder;
+
+    private final ByteBuffer clipBuffer = ByteBuffer.allocate(FORMAT.maximumChunkSize());
+    private final MutableAudioFrame clipFrame = new MutableAudioFrame();
+    private final ByteBuffer opusInput = ByteBuffer.allocateDirect(FORMAT.maximumChunkSize());
+    private final ByteBuffer opusOutput = ByteBuffer.allocateDirect(FORMAT.maximumChunkSize());
+    private final ShortBuffer musicPcm = pcmBuffer();
+    private final ShortBuffer clipPcm = pcmBuffer();
+    private boolean destroyed = false;
+
+    public ClipMixer(AudioPlayer player, int quality) {
+        this.player = player;
+        this.encoder = new OpusEncoder(FORMAT.sampleRate, FORMAT.channelCount, quality);
+        this.clipFrame.setBuffer(clipBuffer);
+    }
+
+    public void play(AudioTrack clip, int volume) {
+        player.setVolume(volume);
+        player.startTrack(clip, false);
+    }
+
+    public void stop() {
+        player.stopTrack();
+    }
+
+    public boolean isActive() {
+        return player.getPlayingTrack() != null;
+    }
+
+    public void setFrameBufferDuration(int duration) {
+        player.setFrameBufferDuration(duration);
+    }
+
+    /**
+     * Mixes the next clip frame into a music frame.
+     *
+     * @param frame    the music frame, replaced with the mixed one
+     * @param hasMusic whether the frame holds music, otherwise the clip is played alone
+     * @return whether the frame holds audio now
+     */
+    public synchronized boolean mix(ByteBuffer frame, boolean hasMusic) {
+        clipBuffer.clear();
+        if (destroyed || !player.provide(clipFrame))
+            return hasMusic;
+        clipBuffer.flip();
+        decode(clipDecoder, clipBuffer, clipPcm);
+
+        if (hasMusic) {
+            frame.flip();
+            decode(musicDecoder, frame, musicPcm);
+            int count = Math.min(musicPcm.limit(), clipPcm.limit());
+            for (int i = 0; i < count; i++) {
+                int sample = musicPcm.get(i) * MUSIC_GAIN_PERCENT / 100 + clipPcm.get(i);
+                clipPcm.put(i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample)));
+            }
+        }
+
+        opusOutput.clear();
+        encoder.encode(clipPcm, FORMAT.chunkSampleCount, opusOutput);
+        frame.clear();
+        frame.put(opusOutput);
+        return true;
+    }
+
+    public synchronized void destroy() {
+        destroyed = true;
+        player.destroy();
+        musicDecoder.close();
+        clipDecoder.close();
+        encoder.close();
+    }
+
+    private void decode(OpusDecoder decoder, ByteBuffer opus, ShortBuffer pcm) {
+        opusInput.clear();
+        opusInput.put(opus);
+        opusInput.flip();
+        pcm.clear();
+        decoder.decode(opusInput, pcm);
+    }
+
+    private static ShortBuffer pcmBuffer() {
+        return ByteBuffer.allocateDirect(SAMPLES * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+    }
+}
@@ -0,0 +1,287 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import com.jagrosh.jmusicbot.metrics.Histogram;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import net.dv8tion.jda.api.entities.Guild;
+
+/**
+ * Shares the item loader pool fairly between guilds. Loads are queued per guild and handed to the pool in turns, no
+ * more at once than it has threads, so a guild loading a long playlist can't delay the loads of every other guild.
+ * <p>
+ * Within a guild, loads with the same ordering key still run one at a time and in order, and loads with different
+ * keys take turns. A load that only waits for another one can give its thread back with {@link Slot#release}, while
+ * still holding up the loads queued after it with the same key.
+ */
+public class FairLoadScheduler {
+    public static final String QUEUE_WAIT = "loader.queue_wait";
+    public static final String QUEUED = "loader.queued";
+    public static final String LOADING = "loader.loading";
+    public static final String UTILIZATION = "loader.utilization";
+
+    /**
+     * Starts a load, as {@code DefaultAudioPlayerManager.loadItemOrdered} does.
+     */
+    public interface Loader {
+        Future<Void> load(Object orderingKey, String identifier, AudioLoadResultHandler handler);
+    }
+
+    /**
+     * The handler a loader is given for a load of this scheduler.
+     */
+    public interface Slot {
+        /**
+         * Stops counting the load against the pool, for a load that waits for another one instead of loading.
+         */
+        void release();
+    }
+
+    private final Loader loader;
+    private final int maxLoading;
+    private final Histogram queueWait;
+
+    private final Map<Object, Partition> partitions = new HashMap<>();
+    // Partitions with a load that can start, in the order they get their turn.
+    private final Deque<Partition> ready = new ArrayDeque<>();
+    private final Set<Object> loadingKeys = new HashSet<>();
+    private int queued = 0;
+    private int loading = 0;
+
+    public FairLoadScheduler(Loader loader, int maxLoading, MetricsRegistry metrics) {
+        this.loader = loader;
+        this.maxLoading = maxLoading;
+        this.queueWait = metrics.histogram(QUEUE_WAIT);
+        metrics.gauge(QUEUED, this::getQueued);
+        metrics.gauge(LOADING, this::getLoading);
+        metrics.gauge(UTILIZATION, () -> getLoading() * 100L / maxLoading);
+    }
+
+    /**
+     * @return an ordering key for loads that belong to a guild but shouldn't wait for its other loads
+     */
+    public static Object key(long guildId, Object key) {
+        return new GuildKey(guildId, key);
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized int getLoading() {
+        return loading;
+    }
+
+    public Future<Void> submit(Object orderingKey, String identifier, AudioLoadResultHandler handler) {
+        return submit(orderingKey, identifier, handler, loader);
+    }
+
+    /**
+     * Queues a load that is started with its own loader, but takes turns with the other loads.
+     */
+    public Future<Void> submit(Object orderingKey, String identifier, AudioLoadResultHandler handler, Loader loader) {
+        Load load = new Load(orderingKey, identifier, handler, loader);
+        synchronized (this) {
+            Object partitionId = partitionOf(orderingKey);
+            Partition partition = partitions.computeIfAbsent(partitionId, Partition::new);
+            Deque<Load> keyQueue = partition.queues.computeIfAbsent(orderingKey, k -> new ArrayDeque<>());
+            keyQueue.add(load);
+            queued++;
+            if (keyQueue.size() == 1 && !loadingKeys.contains(orderingKey))
+                partition.makeReady(orderingKey);
+        }
+        dispatch();
+        return load.future;
+    }
+
+    private void dispatch() {
+        List<Load> starting = new ArrayList<>();
+        synchronized (this) {
+            while (loading < maxLoading && !ready.isEmpty()) {
+                Partition partition = ready.poll();
+                Object key = partition.readyKeys.poll();
+                Deque<Load> keyQueue = partition.queues.get(key);
+                Load load = keyQueue.poll();
+                queued--;
+                if (keyQueue.isEmpty())
+                    partition.queues.remove(key);
+                if (load.future.isCancelled()) {
+                    // Give the key's next load its place instead.
+                    if (!keyQueue.isEmpty())
+                        partition.readyKeys.addFirst(key);
+                } else {
+                    loadingKeys.add(key);
+                    loading++;
+                    starting.add(load);
+                }
+                if (!partition.readyKeys.isEmpty())
+                    ready.add(partition);
+                else if (partition.queues.isEmpty())
+                    partitions.remove(partition.id);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (Load load : starting) {
+            queueWait.record(now - load.submitted);
+            try {
+                load.loader.load(load.key, load.identifier, load);
+            } catch (RuntimeException e) {
+                try {
+                    load.handler.loadFailed(new FriendlyException("Failed to start loading.",
+                            FriendlyException.Severity.FAULT, e));
+                } finally {
+                    finish(load);
+                }
+            }
+        }
+    }
+
+    private void finish(Load load) {
+        synchronized (this) {
+            if (load.finished)
+                return;
+            load.finished = true;
+            if (!load.released)
+                loading--;
+            loadingKeys.remove(load.key);
+            Partition partition = partitions.get(partitionOf(load.key));
+            if (partition != null && partition.queues.containsKey(load.key))
+                partition.makeReady(load.key);
+        }
+        load.future.complete(null);
+        dispatch();
+    }
+
+    private static Object partitionOf(Object orderingKey) {
+        if (orderingKey instanceof Guild)
+            return ((Guild) orderingKey).getIdLong();
+        if (orderingKey instanceof GuildKey)
+            return ((GuildKey) orderingKey).guildId;
+        return orderingKey;
+    }
+
+    private class Partition {
+        private final Object id;
+        private final Map<Object, Deque<Load>> queues = new LinkedHashMap<>();
+        // Keys with a queued load and none loading, in the order they get their turn.
+        private final Deque<Object> readyKeys = new ArrayDeque<>();
+
+        private Partition(Object id) {
+            this.id = id;
+        }
+
+        private void makeReady(Object key) {
+            readyKeys.add(key);
+            if (readyKeys.size() == 1)
+                ready.add(this);
+        }
+    }
+
+    /**
+     * Passes the result on, then lets the next load start.
+     */
+    private class Load implements AudioLoadResultHandler, Slot {
+        private final Object key;
+        private final String identifier;
+        private final AudioLoadResultHandler handler;
+        private final Loader loader;
+        private final long submitted = System.currentTimeMillis();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private boolean finished = false;
+        private boolean released = false;
+
+        private Load(Object key, String identifier, AudioLoadResultHandler handler, Loader loader) {
+            this.key = key;
+            this.identifier = identifier;
+            this.handler = handler;
+            this.loader = loader;
+        }
+
+        @Override
+        public void release() {
+            synchronized (FairLoadScheduler.this) {
+                if (finished || released)
+                    return;
+                released = true;
+                loading--;
+            }
+            dispatch();
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack track) {
+            try {
+                handler.trackLoaded(track);
+            } finally {
+                finish(this);
+            }
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist playlist) {
+            try {
+                handler.playlistLoaded(playlist);
+            } finally {
+                finish(this);
+            }
+        }
+
+        @Override
+        public void noMatches() {
+            try {
+                handler.noMatches();
+            } finally {
+                finish(this);
+            }
+        }
+
+        @Override
+        public void loadFailed(FriendlyException exception) {
+            try {
+                handler.loadFailed(exception);
+            } finally {
+                finish(this);
+            }
+        }
+    }
+
+    private static class GuildKey {
+        private final long guildId;
+        private final Object key;
+
+        private GuildKey(long guildId, Object key) {
+            this.guildId = guildId;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GuildKey))
+                return false;
+            GuildKey other = (GuildKey) o;
+            return guildId == other.guildId && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(guildId, key);
+        }
+    }
+}
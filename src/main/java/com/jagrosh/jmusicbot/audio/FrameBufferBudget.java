@@ -0,0 +1,59 @@
+package com.jagrosh.jmusicbot.audio;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+
+/**
+ * Bounds the audio buffered by all guilds' players together. Buffers are reserved in milliseconds, and can only grow
+ * while the total stays within the memory limit. Every guild is always given its minimum, even past the limit, so it
+ * can keep playing.
+ */
+public class FrameBufferBudget {
+    public static final String RESERVED = "framebuffer.reserved_ms";
+    public static final String GROWN = "framebuffer.grown";
+    public static final String SHRUNK = "framebuffer.shrunk";
+    public static final String DENIED = "framebuffer.denied";
+
+    // Frame buffers allocate room for the largest possible frame, 20ms each.
+    private static final long BYTES_PER_MS = StandardAudioDataFormats.DISCORD_OPUS.maximumChunkSize() / 20;
+
+    private final long maxMillis;
+    private final Counter grown;
+    private final Counter shrunk;
+    private final Counter denied;
+    private long reserved = 0;
+
+    public FrameBufferBudget(long maxBytes, MetricsRegistry metrics) {
+        this.maxMillis = maxBytes / Math.max(1, BYTES_PER_MS);
+        this.grown = metrics.counter(GROWN);
+        this.shrunk = metrics.counter(SHRUNK);
+        this.denied = metrics.counter(DENIED);
+        metrics.gauge(RESERVED, this::getReserved);
+    }
+
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Changes the size of a reservation.
+     *
+     * @param current the currently reserved duration
+     * @param wanted  the duration to change it to
+     * @param minimum the duration that is always granted
+     * @return the reserved duration, which is less than the wanted one if there isn't enough room left
+     */
+    public synchronized int reserve(int current, int wanted, int minimum) {
+        long available = maxMillis - reserved + current;
+        int granted = (int) Math.max(minimum, Math.min(wanted, Math.max(current, available)));
+        reserved += granted - current;
+        if (granted < wanted)
+            denied.increment();
+        if (current > 0 && granted > current)
+            grown.increment();
+        else if (granted < current && wanted > 0)
+            shrunk.increment();
+        return granted;
+    }
+}
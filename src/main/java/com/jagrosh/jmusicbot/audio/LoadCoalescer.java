@@ -0,0 +1,156 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+
+/**
+ * Lets loads of the same identifier that run at the same time share one resolution. The first load goes to the
+ * source, and loads of the identifier started before it finishes wait for its result instead. Every waiting handler
+ * gets its own copies of the tracks. A waiting load of the {@link FairLoadScheduler} gives its place on the pool back,
+ * so loads of a popular identifier don't keep other guilds' loads waiting.
+ */
+public class LoadCoalescer {
+    public static final String COALESCED = "loader.coalesced";
+
+    private static final Logger LOG = LoggerFactory.getLogger("LoadCoalescer");
+
+    private final Counter coalesced;
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    public LoadCoalescer(MetricsRegistry metrics) {
+        this.coalesced = metrics.counter(COALESCED);
+    }
+
+    public Future<Void> load(Object orderingKey, String identifier, AudioLoadResultHandler handler,
+            FairLoadScheduler.Loader loader) {
+        Flight flight;
+        CompletableFuture<Void> future = null;
+        synchronized (this) {
+            flight = flights.get(identifier);
+            if (flight != null) {
+                future = new CompletableFuture<>();
+                flight.waiters.add(new Waiter(handler, future));
+                coalesced.increment();
+            } else {
+                flight = new Flight(identifier, handler);
+                flights.put(identifier, flight);
+            }
+        }
+        if (future != null) {
+            if (handler instanceof FairLoadScheduler.Slot)
+                ((FairLoadScheduler.Slot) handler).release();
+            return future;
+        }
+        try {
+            return loader.load(orderingKey, identifier, flight);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                flights.remove(identifier);
+            }
+            flight.deliver(h -> h.loadFailed(new FriendlyException("Failed to start loading.",
+                    FriendlyException.Severity.FAULT, e)));
+            throw e;
+        }
+    }
+
+    private interface Result {
+        void deliver(AudioLoadResultHandler handler);
+    }
+
+    private static class Waiter {
+        private final AudioLoadResultHandler handler;
+        private final CompletableFuture<Void> future;
+
+        private Waiter(AudioLoadResultHandler handler, CompletableFuture<Void> future) {
+            this.handler = handler;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Receives the result of the first load and passes it on to everyone waiting for it.
+     */
+    private class Flight implements AudioLoadResultHandler {
+        private final String identifier;
+        private final AudioLoadResultHandler leader;
+        private final List<Waiter> waiters = new ArrayList<>();
+
+        private Flight(String identifier, AudioLoadResultHandler leader) {
+            this.identifier = identifier;
+            this.leader = leader;
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack track) {
+            finish(h -> h.trackLoaded(track), h -> h.trackLoaded(track.makeClone()));
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist playlist) {
+            finish(h -> h.playlistLoaded(playlist), h -> h.playlistLoaded(copy(playlist)));
+        }
+
+        @Override
+        public void noMatches() {
+            finish(AudioLoadResultHandler::noMatches, AudioLoadResultHandler::noMatches);
+        }
+
+        @Override
+        public void loadFailed(FriendlyException exception) {
+            finish(h -> h.loadFailed(exception), h -> h.loadFailed(exception));
+        }
+
+        private void finish(Result original, Result copy) {
+            synchronized (LoadCoalescer.this) {
+                flights.remove(identifier);
+            }
+            try {
+                deliver(copy);
+            } finally {
+                original.deliver(leader);
+            }
+        }
+
+        /**
+         * Passes a result to the waiting handlers, which can't join anymore once the flight is finished.
+         */
+        private void deliver(Result result) {
+            for (Waiter waiter : waiters) {
+                try {
+                    result.deliver(waiter.handler);
+                } catch (RuntimeException e) {
+                    LOG.warn("Handler failed for coalesced load of " + identifier, e);
+                } finally {
+                    waiter.future.complete(null);
+                }
+            }
+        }
+    }
+
+    private static AudioPlaylist copy(AudioPlaylist playlist) {
+        List<AudioTrack> tracks = new ArrayList<>(playlist.getTracks().size());
+        AudioTrack selected = null;
+        for (AudioTrack track : playlist.getTracks()) {
+            AudioTrack clone = track.makeClone();
+            if (track == playlist.getSelectedTrack())
+                selected = clone;
+            tracks.add(clone);
+        }
+        return new BasicAudioPlaylist(playlist.getName(), tracks, selected, playlist.isSearchResult());
+    }
+}
@@ -0,0 +1,152 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.audio.filter.LoudnessMeter;
+import com.jagrosh.jmusicbot.audio.filter.Normalization;
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+/**
+ * Remembers the integrated loudness of tracks, so they can be played at the same perceived volume.
+ * <p>
+ * A track is measured while it is played for the first time, and every later play applies the gain that brings it to
+ * the target loudness. Tracks that are already close to the target play without any gain, so they don't need to be
+ * decoded. Measurements are kept for the most recently played tracks and saved to a file.
+ */
+public class LoudnessCache {
+    public static final String MEASURED = "loudness.measured";
+    public static final String APPLIED = "loudness.applied";
+    public static final String BYPASSED = "loudness.bypassed";
+
+    private static final Logger LOG = LoggerFactory.getLogger("LoudnessCache");
+
+    private static final int MAX_ENTRIES = 10000;
+    private static final double MIN_GAIN_DB = -12;
+    private static final double MAX_GAIN_DB = 6;
+    // Gains smaller than this aren't audible, so the track plays untouched.
+    private static final double BYPASS_DB = 0.5;
+    // A measurement only counts if it covered at least this share of the track.
+    private static final double MIN_COVERAGE = 0.5;
+
+    private final Path file;
+    private final double target;
+    private final Executor writer;
+    private final Counter measured;
+    private final Counter applied;
+    private final Counter bypassed;
+
+    // Key -> integrated loudness in LUFS, in least recently played order.
+    private final LinkedHashMap<String, Double> entries = new LinkedHashMap<String, Double>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private boolean saveScheduled = false;
+
+    public LoudnessCache(Path file, double target, Executor writer, MetricsRegistry metrics) {
+        this.file = file;
+        this.target = target;
+        this.writer = writer;
+        this.measured = metrics.counter(MEASURED);
+        this.applied = metrics.counter(APPLIED);
+        this.bypassed = metrics.counter(BYPASSED);
+    }
+
+    public void init() {
+        try {
+            JSONArray array = new JSONArray(new String(Files.readAllBytes(file)));
+            synchronized (this) {
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject o = array.getJSONObject(i);
+                    entries.put(o.getString("key"), o.getDouble("lufs"));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing has been measured yet.
+        } catch (IOException | JSONException e) {
+            LOG.warn("Failed to load loudness measurements: " + e);
+        }
+    }
+
+    /**
+     * @param track the track about to be played, not a shared or cached wrapper
+     * @return how to normalize this play of the track, or null if it should play untouched
+     */
+    public Normalization forTrack(AudioTrack track) {
+        String key = key(track);
+        if (key == null)
+            return null;
+        Double lufs;
+        synchronized (this) {
+            lufs = entries.get(key);
+        }
+        if (lufs == null)
+            return Normalization.measure(key);
+
+        double gainDb = Math.max(MIN_GAIN_DB, Math.min(MAX_GAIN_DB, target - lufs));
+        if (Math.abs(gainDb) < BYPASS_DB) {
+            bypassed.increment();
+            return null;
+        }
+        applied.increment();
+        return Normalization.gain(key, (float) Math.pow(10, gainDb / 20));
+    }
+
+    /**
+     * Stores the measurement of a track that stopped playing, if enough of it was heard.
+     */
+    public void finish(Normalization normalization, AudioTrack track) {
+        LoudnessMeter meter = normalization.getMeter();
+        if (meter == null || meter.getMeasuredMillis() < track.getDuration() * MIN_COVERAGE)
+            return;
+        double lufs = meter.getIntegratedLoudness();
+        if (Double.isNaN(lufs))
+            return;
+        measured.increment();
+        synchronized (this) {
+            entries.put(normalization.getKey(), lufs);
+            if (saveScheduled)
+                return;
+            saveScheduled = true;
+        }
+        writer.execute(this::save);
+    }
+
+    private void save() {
+        JSONArray array = new JSONArray();
+        synchronized (this) {
+            saveScheduled = false;
+            for (Map.Entry<String, Double> entry : entries.entrySet())
+                array.put(new JSONObject().put("key", entry.getKey()).put("lufs", entry.getValue()));
+        }
+        try {
+            Files.write(file, array.toString().getBytes());
+        } catch (IOException e) {
+            LOG.warn("Failed to save loudness measurements: " + e);
+        }
+    }
+
+    /**
+     * @return the key the track's loudness is stored under, or null if it can't be measured
+     */
+    private static String key(AudioTrack track) {
+        if (track.getInfo().isStream || track.getSourceManager() == null)
+            return null;
+        return track.getSourceManager().getSourceName() + ":" + track.getIdentifier();
+    }
+}
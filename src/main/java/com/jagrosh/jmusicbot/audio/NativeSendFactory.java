@@ -0,0 +1,88 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sedmelluq.discord.lavaplayer.jdaudp.NativeAudioSendFactory;
+
+import net.dv8tion.jda.api.audio.factory.DefaultSendFactory;
+import net.dv8tion.jda.api.audio.factory.IAudioSendFactory;
+import net.dv8tion.jda.api.audio.factory.IAudioSendSystem;
+import net.dv8tion.jda.api.audio.factory.IPacketProvider;
+
+/**
+ * Sends audio packets from a native UDP queue, which buffers them off the heap and keeps sending through garbage
+ * collection pauses. Where the native library can't be loaded, audio is sent by JDA's own sender instead.
+ */
+public class NativeSendFactory implements IAudioSendFactory {
+    private static final Logger LOG = LoggerFactory.getLogger("NativeSendFactory");
+
+    private final IAudioSendFactory fallback = new DefaultSendFactory();
+    private volatile IAudioSendFactory nativeFactory;
+
+    public NativeSendFactory() {
+        try {
+            nativeFactory = new NativeAudioSendFactory();
+        } catch (LinkageError e) {
+            disable(e);
+        }
+    }
+
+    @Override
+    public IAudioSendSystem createSendSystem(IPacketProvider packetProvider) {
+        IAudioSendFactory factory = nativeFactory;
+        if (factory != null) {
+            try {
+                return new FallbackSendSystem(packetProvider, factory.createSendSystem(packetProvider));
+            } catch (LinkageError e) {
+                disable(e);
+            }
+        }
+        return fallback.createSendSystem(packetProvider);
+    }
+
+    private void disable(LinkageError e) {
+        LOG.warn("Native audio sending isn't available on this system, using the default sender: " + e);
+        nativeFactory = null;
+    }
+
+    /**
+     * The native library is only loaded when the first send system starts, so that's where it can still fail.
+     */
+    private class FallbackSendSystem implements IAudioSendSystem {
+        private final IPacketProvider packetProvider;
+        private IAudioSendSystem system;
+        private ConcurrentMap<String, String> contextMap;
+
+        private FallbackSendSystem(IPacketProvider packetProvider, IAudioSendSystem system) {
+            this.packetProvider = packetProvider;
+            this.system = system;
+        }
+
+        @Override
+        public void start() {
+            try {
+                system.start();
+            } catch (LinkageError e) {
+                disable(e);
+                system = fallback.createSendSystem(packetProvider);
+                if (contextMap != null)
+                    system.setContextMap(contextMap);
+                system.start();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            system.shutdown();
+        }
+
+        @Override
+        public void setContextMap(ConcurrentMap<String, String> contextMap) {
+            this.contextMap = contextMap;
+            system.setContextMap(contextMap);
+        }
+    }
+}
@@ -76,6 +76,10 @@ public class NowplayingHandler {
                 continue;
             }
             AudioHandler handler = (AudioHandler) guild.getAudioManager().getSendingHandler();
+            if (handler == null) {
+                toRemove.add(guildId);
+                continue;
+            }
             Message msg = handler.getNowPlaying(bot.getJDA());
             if (msg == null) {
                 msg = handler.getNoMusicPlaying(bot.getJDA());
@@ -0,0 +1,438 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+/**
+ * Keeps the Opus frames of frequently played tracks on disk, so later plays don't have to fetch and decode them again.
+ * <p>
+ * A track is recorded from the frames sent to Discord the second time it is played, if it plays from start to end at
+ * volume 100 without seeking. The frames are collected in small chunks that are written to a file in the background,
+ * so a recording doesn't hold the track in memory or touch the disk from the audio thread, and only the frame offsets
+ * are added once it ends. Each track is a file
+ * in the cache folder which is memory mapped when played. The least recently played files are deleted once the cache
+ * is over its size limit.
+ */
+public class OpusFrameCache {
+    public static final String HITS = "framecache.hits";
+    public static final String MISSES = "framecache.misses";
+    public static final String STORES = "framecache.stores";
+    public static final String EVICTIONS = "framecache.evictions";
+    public static final String BYTES = "framecache.bytes";
+
+    private static final Logger LOG = LoggerFactory.getLogger("OpusFrameCache");
+
+    private static final int MAGIC = 0x4F505532;
+    private static final String INDEX_FILE = "index.txt";
+    private static final String SUFFIX = ".opus";
+    private static final long MAX_DURATION = TimeUnit.MINUTES.toMillis(15);
+    private static final int PLAYS_TO_CACHE = 2;
+    private static final int TRACKED_PLAYS = 1000;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Path folder;
+    private final long maxBytes;
+    // Writes, finishes and deletes recordings, off the audio and bot threads. Tasks run in order, so a recording's
+    // chunks are written before it is finished.
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "frame-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter stores;
+    private final Counter evictions;
+
+    // File name -> size, in least recently played order.
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Integer> plays = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > TRACKED_PLAYS;
+        }
+    };
+    private long totalBytes = 0;
+
+    public OpusFrameCache(Path folder, long maxBytes, MetricsRegistry metrics) {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+        this.hits = metrics.counter(HITS);
+        this.misses = metrics.counter(MISSES);
+        this.stores = metrics.counter(STORES);
+        this.evictions = metrics.counter(EVICTIONS);
+        metrics.gauge(BYTES, this::getTotalBytes);
+    }
+
+    public void init() {
+        try {
+            Files.createDirectories(folder);
+            Path index = folder.resolve(INDEX_FILE);
+            if (Files.exists(index)) {
+                for (String name : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                    Path file = folder.resolve(name.trim());
+                    if (!name.trim().isEmpty() && Files.exists(file))
+                        addEntry(name.trim(), Files.size(file));
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read the frame cache index", e);
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return a track playing the cached frames of the given one, or null if it isn't cached
+     */
+    public AudioTrack lookup(AudioTrack track) {
+        String key = key(track);
+        if (key == null)
+            return null;
+        String name = fileName(key);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                misses.increment();
+                return null;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(folder.resolve(name), StandardOpenOption.READ)) {
+            Entry entry = new Entry(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            if (!entry.key.equals(key))
+                return null;
+            hits.increment();
+            CachedOpusAudioTrack cached = new CachedOpusAudioTrack(track, entry);
+            cached.setUserData(track.getUserData());
+            return cached;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to open cached frames for " + key, e);
+            synchronized (this) {
+                removeEntry(name);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Called when a track starts playing from the beginning.
+     *
+     * @return a recorder for the track's frames, or null if it shouldn't be cached (yet)
+     */
+    public Recorder startRecording(AudioTrack track) {
+        String key = key(track);
+        if (key == null || track.getPosition() != 0 || track.getDuration() > MAX_DURATION)
+            return null;
+        synchronized (this) {
+            if (entries.containsKey(fileName(key)))
+                return null;
+            int count = plays.merge(key, 1, Integer::sum);
+            if (count < PLAYS_TO_CACHE)
+                return null;
+        }
+        try {
+            return new Recorder(key);
+        } catch (IOException e) {
+            LOG.warn("Failed to start recording " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the key the track is cached under, or null if it can't be cached
+     */
+    private static String key(AudioTrack track) {
+        if (track instanceof CachedOpusAudioTrack || track.getInfo().isStream || track.getSourceManager() == null)
+            return null;
+        String source = track.getSourceManager().getSourceName();
+        if ("local".equals(source))
+            return null;
+        return source + ":" + track.getIdentifier();
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash)
+                sb.append(String.format("%02x", b));
+            return sb.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void store(Recorder recorder) {
+        String name = fileName(recorder.key);
+        try {
+            try (FileChannel channel = recorder.channel) {
+                if (recorder.failed != null)
+                    throw recorder.failed;
+                int dataLength = recorder.offsets[recorder.frames];
+                ByteBuffer offsets = ByteBuffer.allocate((recorder.frames + 1) * 4);
+                for (int i = 0; i <= recorder.frames; i++)
+                    offsets.putInt(recorder.offsets[i]);
+                offsets.flip();
+                writeFully(channel, offsets, recorder.dataStart + (long) dataLength);
+                ByteBuffer counts = ByteBuffer.allocate(8).putInt(recorder.frames).putInt(dataLength);
+                counts.flip();
+                writeFully(channel, counts, recorder.dataStart - 8);
+            }
+            Files.move(recorder.temp, folder.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                addEntry(name, Files.size(folder.resolve(name)));
+                stores.increment();
+                while (totalBytes > maxBytes && entries.size() > 1) {
+                    removeEntry(entries.keySet().iterator().next());
+                    evictions.increment();
+                }
+                writeIndex();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to store frames for " + recorder.key, e);
+            delete(recorder.temp);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void addEntry(String name, long size) {
+        Long previous = entries.put(name, size);
+        totalBytes += size - (previous == null ? 0 : previous);
+    }
+
+    private void removeEntry(String name) {
+        Long size = entries.remove(name);
+        if (size != null)
+            totalBytes -= size;
+        try {
+            Files.deleteIfExists(folder.resolve(name));
+        } catch (IOException e) {
+            LOG.warn("Failed to delete cached frames " + name, e);
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        List<String> names = new ArrayList<>(entries.keySet());
+        Files.write(folder.resolve(INDEX_FILE), names, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The frames of one cached track, read straight from the file mapping.
+     */
+    static class Entry {
+        private final MappedByteBuffer mapping;
+        private final String key;
+        private final int frames;
+        private final int offsetsStart;
+        private final int dataStart;
+
+        private Entry(MappedByteBuffer mapping) throws IOException {
+            this.mapping = mapping;
+            if (mapping.getInt(0) != MAGIC)
+                throw new IOException("Not a frame cache file");
+            int keyLength = mapping.getShort(4) & 0xFFFF;
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer view = mapping.duplicate();
+            view.position(6);
+            view.get(keyBytes);
+            this.key = new String(keyBytes, StandardCharsets.UTF_8);
+            this.frames = mapping.getInt(6 + keyLength);
+            this.dataStart = 14 + keyLength;
+            this.offsetsStart = dataStart + mapping.getInt(10 + keyLength);
+        }
+
+        int getFrameCount() {
+            return frames;
+        }
+
+        /**
+         * @return a view of the whole mapping, for {@link #frame} to move around in
+         */
+        ByteBuffer view() {
+            return mapping.duplicate();
+        }
+
+        /**
+         * Points {@code view} at frame {@code index}.
+         */
+        void frame(int index, ByteBuffer view) {
+            int start = dataStart + mapping.getInt(offsetsStart + index * 4);
+            int end = dataStart + mapping.getInt(offsetsStart + (index + 1) * 4);
+            view.clear();
+            view.position(start);
+            view.limit(end);
+        }
+    }
+
+    /**
+     * Writes the frames of a playing track to a temporary file as they are sent, and moves it into the cache once the
+     * track has played to the end. The file is laid out as the magic number, the key, the frame and data byte counts,
+     * the frames, and then the offset of every frame in the data. Appending is only done from the audio send thread,
+     * which only copies the frame into the current chunk and hands full chunks to the writer thread.
+     */
+    public class Recorder {
+        private final String key;
+        private final Path temp;
+        private final FileChannel channel;
+        private final int dataStart;
+        private ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        // Where the current chunk goes in the file.
+        private long chunkStart;
+        private int[] offsets = new int[1024];
+        private int frames = 0;
+        private boolean closed = false;
+        // Set by the writer thread if a chunk couldn't be written.
+        private volatile IOException failed;
+
+        private Recorder(String key) throws IOException {
+            this.key = key;
+            this.temp = folder.resolve(fileName(key) + ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(header)) {
+                out.writeInt(MAGIC);
+                out.writeUTF(key);
+                // The frame and data byte counts, filled in once the track has ended.
+                out.writeInt(0);
+                out.writeInt(0);
+            }
+            this.dataStart = header.size();
+            this.chunkStart = dataStart;
+            try {
+                writeFully(channel, ByteBuffer.wrap(header.toByteArray()), 0);
+            } catch (IOException e) {
+                channel.close();
+                delete(temp);
+                throw e;
+            }
+        }
+
+        /**
+         * Appends the frame in {@code buffer} without changing its position.
+         *
+         * @return false if the frame doesn't continue the recording, after which the recorder is discarded
+         */
+        public synchronized boolean append(ByteBuffer buffer, long timecode, int volume) {
+            if (closed)
+                return false;
+            if (volume != 100 || timecode != frames * 20L || frames * 20L > MAX_DURATION || failed != null) {
+                discard();
+                return false;
+            }
+            if (frames + 1 >= offsets.length)
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+
+            int position = buffer.position();
+            int limit = buffer.limit();
+            try {
+                while (buffer.hasRemaining()) {
+                    if (!chunk.hasRemaining())
+                        flush();
+                    int length = Math.min(buffer.remaining(), chunk.remaining());
+                    buffer.limit(buffer.position() + length);
+                    chunk.put(buffer);
+                    buffer.limit(limit);
+                }
+            } finally {
+                buffer.limit(limit);
+                buffer.position(position);
+            }
+            offsets[frames + 1] = offsets[frames] + (limit - position);
+            frames++;
+            return true;
+        }
+
+        /**
+         * Hands the current chunk to the writer thread and starts a new one.
+         */
+        private void flush() {
+            ByteBuffer full = chunk;
+            long start = chunkStart;
+            full.flip();
+            chunkStart += full.remaining();
+            chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            writer.execute(() -> {
+                if (failed != null)
+                    return;
+                try {
+                    writeFully(channel, full, start);
+                } catch (IOException e) {
+                    failed = e;
+                }
+            });
+        }
+
+        /**
+         * Adds the recording to the cache in the background.
+         */
+        public synchronized void finish() {
+            if (closed)
+                return;
+            if (frames == 0) {
+                discard();
+                return;
+            }
+            closed = true;
+            if (chunk.position() > 0)
+                flush();
+            chunk = null;
+            writer.execute(() -> store(this));
+        }
+
+        /**
+         * Drops the recording and deletes its file in the background.
+         */
+        public synchronized void discard() {
+            if (closed)
+                return;
+            closed = true;
+            chunk = null;
+            writer.execute(() -> {
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                }
+                delete(temp);
+            });
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.util.concurrent.TimeUnit;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.Histogram;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+
+/**
+ * Playback health for a single guild. Everything is recorded both for the guild and into the global totals.
+ * <p>
+ * {@link #onFrame} is called from the audio send thread every 20ms, the track events from lavaplayer's threads.
+ */
+public class PlaybackMetrics {
+    public static final String FRAMES = "playback.frames";
+    public static final String UNDERRUNS = "playback.underruns";
+    public static final String MISS_STREAK = "playback.miss_streak_frames";
+    public static final String TRACK_START_LATENCY = "playback.track_start_latency_ms";
+    public static final String LOAD_TO_FIRST_FRAME = "playback.load_to_first_frame_ms";
+    public static final String STUCK_TRACKS = "playback.stuck_tracks";
+
+    private final Counter frames;
+    private final Counter underruns;
+    private final Counter guildUnderruns;
+    private final Histogram missStreaks;
+    private final Histogram guildMissStreaks;
+    private final Histogram trackStartLatency;
+    private final Histogram guildTrackStartLatency;
+    private final Histogram loadToFirstFrame;
+    private final Histogram guildLoadToFirstFrame;
+    private final Counter stuckTracks;
+    private final Counter guildStuckTracks;
+
+    private volatile long trackEndedAt = -1;
+    private volatile long trackStartedAt = -1;
+    private volatile boolean awaitingFirstFrame = false;
+    private int missStreak = 0;
+
+    public PlaybackMetrics(MetricsRegistry registry, long guildId) {
+        frames = registry.counter(FRAMES);
+        underruns = registry.counter(UNDERRUNS);
+        guildUnderruns = registry.counter(UNDERRUNS, guildId);
+        missStreaks = registry.histogram(MISS_STREAK);
+        guildMissStreaks = registry.histogram(MISS_STREAK, guildId);
+        trackStartLatency = registry.histogram(TRACK_START_LATENCY);
+        guildTrackStartLatency = registry.histogram(TRACK_START_LATENCY, guildId);
+        loadToFirstFrame = registry.histogram(LOAD_TO_FIRST_FRAME);
+        guildLoadToFirstFrame = registry.histogram(LOAD_TO_FIRST_FRAME, guildId);
+        stuckTracks = registry.counter(STUCK_TRACKS);
+        guildStuckTracks = registry.counter(STUCK_TRACKS, guildId);
+    }
+
+    /**
+     * @param provided whether the player had a frame ready
+     * @param expected whether a frame should have been ready, ie. a track is playing and not paused
+     */
+    public void onFrame(boolean provided, boolean expected) {
+        if (expected)
+            frames.increment();
+        if (provided) {
+            if (awaitingFirstFrame) {
+                awaitingFirstFrame = false;
+                long now = System.nanoTime();
+                if (trackEndedAt != -1) {
+                    record(trackStartLatency, guildTrackStartLatency, now - trackEndedAt);
+                    trackEndedAt = -1;
+                }
+                record(loadToFirstFrame, guildLoadToFirstFrame, now - trackStartedAt);
+            }
+            if (missStreak > 0) {
+                missStreaks.record(missStreak);
+                guildMissStreaks.record(missStreak);
+                missStreak = 0;
+            }
+        } else if (expected && !awaitingFirstFrame) {
+            underruns.increment();
+            guildUnderruns.increment();
+            missStreak++;
+        }
+    }
+
+    public void onTrackStart() {
+        trackStartedAt = System.nanoTime();
+        awaitingFirstFrame = true;
+        missStreak = 0;
+    }
+
+    public void onTrackEnd() {
+        trackEndedAt = System.nanoTime();
+        awaitingFirstFrame = false;
+    }
+
+    /**
+     * Called when nothing is played after a track ended, so the next track start isn't counted as a transition.
+     */
+    public void onIdle() {
+        trackEndedAt = -1;
+    }
+
+    public void onTrackStuck() {
+        stuckTracks.increment();
+        guildStuckTracks.increment();
+    }
+
+    public long getUnderruns() {
+        return guildUnderruns.get();
+    }
+
+    private static void record(Histogram global, Histogram guild, long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        global.record(millis);
+        guild.record(millis);
+    }
+}
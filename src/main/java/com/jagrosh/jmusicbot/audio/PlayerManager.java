@@ -16,46 +16,350 @@
 package com.jagrosh.jmusicbot.audio;
 
 import com.jagrosh.jmusicbot.Bot;
+import com.jagrosh.jmusicbot.audio.filter.FilterSettings;
+import com.jagrosh.jmusicbot.audio.source.FileMappings;
+import com.jagrosh.jmusicbot.audio.source.MappedLocalAudioSourceManager;
+import com.jagrosh.jmusicbot.audio.source.ReadAheadHttpAudioSourceManager;
+import com.jagrosh.jmusicbot.audio.source.SeekIndexStore;
+import com.jagrosh.jmusicbot.audio.source.StreamingYoutubePlaylistLoader;
+import com.jagrosh.jmusicbot.library.LibraryIndex;
+import com.jagrosh.jmusicbot.queue.FairQueue;
+import com.jagrosh.jmusicbot.utils.OtherUtil;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerRegistry;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
+import com.sedmelluq.discord.lavaplayer.source.http.HttpAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.DefaultYoutubeLinkRouter;
+import com.sedmelluq.discord.lavaplayer.source.youtube.DefaultYoutubeTrackDetailsLoader;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeMixProvider;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeSearchProvider;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeSignatureCipherManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioReference;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.NonAllocatingAudioFrameBuffer;
+import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Guild;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * @author John Grosh (john.a.grosh@gmail.com)
  */
 public class PlayerManager extends DefaultAudioPlayerManager {
+    // How long the queue and filters of a released handler are kept for the guild to come back.
+    private static final long PARKED_TTL = TimeUnit.DAYS.toMillis(1);
+
     private final Bot bot;
+    // Queues and filters of guilds whose idle handler was released, picked up again when the handler is rebuilt.
+    private final Map<Long, Parked> parked = new HashMap<>();
+    private final StreamingYoutubePlaylistLoader playlistLoader = new StreamingYoutubePlaylistLoader();
+    private ExecutorService playlistStreams;
+    private SharedPlayback sharedPlayback;
+    private OpusFrameCache frameCache;
+    private LoudnessCache loudnessCache;
+    private FairLoadScheduler loadScheduler;
+    private StreamPrefetcher streamPrefetcher;
+    private FrameBufferBudget frameBufferBudget;
+    private ResolutionCache resolutionCache;
+    private SearchCache searchCache;
+    private LoadCoalescer loadCoalescer;
+    private LibraryIndex library;
 
     public PlayerManager(Bot bot) {
         this.bot = bot;
     }
 
     public void init() {
+        getConfiguration().setFrameBufferFactory(NonAllocatingAudioFrameBuffer::new);
+        // Lets filter changes apply to the playing track instead of the next one.
+        getConfiguration().setFilterHotSwapEnabled(true);
+        setItemLoaderThreadPoolSize(bot.getConfig().getLoaderThreads());
+        frameBufferBudget = new FrameBufferBudget(bot.getConfig().getFrameBufferMemory() * 1024 * 1024,
+                bot.getMetrics());
+        if (bot.getConfig().useResolutionCache()) {
+            resolutionCache = new ResolutionCache(OtherUtil.getPath("resolved.bin"), this, bot.getThreadpool(),
+                    bot.getMetrics());
+            resolutionCache.init();
+        }
+        if (bot.getConfig().useSearchCache())
+            searchCache = new SearchCache(this, bot.getMetrics());
+        loadCoalescer = new LoadCoalescer(bot.getMetrics());
+        loadScheduler = new FairLoadScheduler(this::resolve, bot.getConfig().getLoaderThreads(), bot.getMetrics());
+        // Streamed playlists take the scheduler's turns too, so they never need more threads than the loader pool.
+        playlistStreams = Executors.newFixedThreadPool(bot.getConfig().getLoaderThreads(), r -> {
+            Thread thread = new Thread(r, "playlist-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
         AudioSourceManagers.registerRemoteSources(this);
-        AudioSourceManagers.registerLocalSource(this);
+        FileMappings mappings = new FileMappings(bot.getConfig().getLocalMapping() * 1024 * 1024);
+        bot.getMetrics().gauge("local.mapped_bytes", mappings::getMappedBytes);
+        MappedLocalAudioSourceManager localSource = new MappedLocalAudioSourceManager(mappings,
+                new SeekIndexStore(OtherUtil.getPath(bot.getConfig().getFrameCacheFolder()).resolve("seek")));
+        registerSourceManager(localSource);
+        if (!bot.getConfig().getLibraryFolders().isEmpty()) {
+            library = new LibraryIndex(OtherUtil.getPath("library.bin"), bot.getConfig().getLibraryFolders().stream()
+                    .map(OtherUtil::getPath).collect(Collectors.toList()), this, localSource, bot.getMetrics());
+            library.init();
+        }
         source(YoutubeAudioSourceManager.class).setPlaylistPageCount(10);
+        if (bot.getConfig().getPrefetchCount() > 0)
+            streamPrefetcher = new StreamPrefetcher(source(YoutubeAudioSourceManager.class),
+                    bot.getConfig().getPrefetchCount(), bot.getMetrics());
+        if (bot.getConfig().useAdaptiveQuality())
+            new QualityGovernor(getConfiguration(), bot.getMetrics()).init(bot.getThreadpool());
+        if (bot.getConfig().getFrameCacheSize() > 0) {
+            frameCache = new OpusFrameCache(OtherUtil.getPath(bot.getConfig().getFrameCacheFolder()),
+                    bot.getConfig().getFrameCacheSize() * 1024 * 1024, bot.getMetrics());
+            frameCache.init();
+        }
+        if (bot.getConfig().useNormalization()) {
+            loudnessCache = new LoudnessCache(OtherUtil.getPath("loudness.json"),
+                    bot.getConfig().getNormalizationTarget(), bot.getThreadpool(), bot.getMetrics());
+            loudnessCache.init();
+        }
+        if (bot.getConfig().useSharedPlayback()) {
+            sharedPlayback = new SharedPlayback(this, bot.getMetrics());
+            sharedPlayback.init();
+        }
+        if (bot.getConfig().getIdleMinutes() > 0)
+            bot.getThreadpool().scheduleWithFixedDelay(() -> releaseIdle(), 1, 1, TimeUnit.MINUTES);
     }
 
     public Bot getBot() {
         return bot;
     }
 
+    /**
+     * Swaps lavaplayer's HTTP source for one that reads ahead, see {@link ReadAheadHttpAudioSourceManager}, and gives
+     * the YouTube source a playlist loader that can stream, see {@link StreamingYoutubePlaylistLoader}.
+     */
+    @Override
+    public void registerSourceManager(AudioSourceManager sourceManager) {
+        if (sourceManager.getClass() == HttpAudioSourceManager.class && bot.getConfig().getReadAhead() > 0) {
+            sourceManager.shutdown();
+            sourceManager = new ReadAheadHttpAudioSourceManager(MediaContainerRegistry.DEFAULT_REGISTRY,
+                    bot.getConfig().getReadAhead() * 1024, bot.getMetrics());
+        } else if (sourceManager.getClass() == YoutubeAudioSourceManager.class) {
+            sourceManager.shutdown();
+            sourceManager = new YoutubeAudioSourceManager(true, new DefaultYoutubeTrackDetailsLoader(),
+                    new YoutubeSearchProvider(), new YoutubeSignatureCipherManager(), playlistLoader,
+                    new DefaultYoutubeLinkRouter(), new YoutubeMixProvider());
+        }
+        super.registerSourceManager(sourceManager);
+    }
+
+    /**
+     * Loads are queued per guild and take turns on the item loader pool, see {@link FairLoadScheduler}.
+     */
+    @Override
+    public Future<Void> loadItemOrdered(Object orderingKey, String identifier, AudioLoadResultHandler resultHandler) {
+        if (loadScheduler == null)
+            return super.loadItemOrdered(orderingKey, identifier, resultHandler);
+        return loadScheduler.submit(orderingKey, identifier, resultHandler);
+    }
+
+    /**
+     * Loads an identifier on the item loader pool, unless the search or resolution cache remembers what it resolved
+     * to. Loads of an identifier that is already loading wait for that load instead, see {@link LoadCoalescer}.
+     */
+    private Future<Void> resolve(Object orderingKey, String identifier, AudioLoadResultHandler resultHandler) {
+        if (SearchCache.isSearch(identifier)) {
+            AudioPlaylist results = searchCache == null ? null : searchCache.lookup(identifier);
+            if (results != null) {
+                bot.getThreadpool().execute(() -> resultHandler.playlistLoaded(results));
+                return CompletableFuture.completedFuture(null);
+            }
+        } else if (resolutionCache != null && resolutionCache.replay(identifier, resultHandler))
+            return CompletableFuture.completedFuture(null);
+        return loadCoalescer.load(orderingKey, identifier, resultHandler,
+                (key, id, handler) -> super.loadItemOrdered(key, id, record(id, handler)));
+    }
+
+    /**
+     * Loads a YouTube playlist, passing its tracks to the listener page by page as they come in, and then the whole
+     * playlist to the handler. The load takes its turn like any other, but reads every page of the playlist. A
+     * playlist the resolution cache remembers goes to the handler at once, without the listener.
+     */
+    public Future<Void> loadPlaylistProgressively(Object orderingKey, String identifier,
+            StreamingYoutubePlaylistLoader.Listener listener, AudioLoadResultHandler resultHandler) {
+        if (resolutionCache != null && resolutionCache.replay(identifier, resultHandler))
+            return CompletableFuture.completedFuture(null);
+        return loadScheduler.submit(orderingKey, identifier, resultHandler, (key, id, handler) ->
+                playlistStreams.submit(() -> stream(id, listener, handler), null));
+    }
+
+    /**
+     * A stream the listener stopped ends with only the tracks read until then, so its result isn't recorded in the
+     * resolution cache, where it would stand for the whole playlist.
+     */
+    private void stream(String identifier, StreamingYoutubePlaylistLoader.Listener listener,
+            AudioLoadResultHandler resultHandler) {
+        AtomicBoolean stopped = new AtomicBoolean();
+        AudioItem item;
+        try {
+            item = playlistLoader.stream(tracks -> {
+                if (listener.tracksLoaded(tracks))
+                    return true;
+                stopped.set(true);
+                return false;
+            }, () -> source(YoutubeAudioSourceManager.class).loadItem(this, new AudioReference(identifier, null)));
+        } catch (FriendlyException e) {
+            record(identifier, resultHandler).loadFailed(e);
+            return;
+        } catch (RuntimeException e) {
+            record(identifier, resultHandler).loadFailed(new FriendlyException(
+                    "Something went wrong when loading the playlist.", FriendlyException.Severity.FAULT, e));
+            return;
+        }
+        if (!stopped.get())
+            resultHandler = record(identifier, resultHandler);
+        if (item instanceof AudioPlaylist)
+            resultHandler.playlistLoaded((AudioPlaylist) item);
+        else if (item instanceof AudioTrack)
+            resultHandler.trackLoaded((AudioTrack) item);
+        else
+            resultHandler.noMatches();
+    }
+
+    private AudioLoadResultHandler record(String identifier, AudioLoadResultHandler resultHandler) {
+        if (SearchCache.isSearch(identifier))
+            return searchCache == null ? resultHandler : searchCache.recorder(identifier, resultHandler);
+        return resolutionCache == null ? resultHandler : resolutionCache.recorder(identifier, resultHandler);
+    }
+
+    /**
+     * @return the track to play for the given one, which plays its cached frames if there are any, decodes from a
+     *         shared source if other guilds are playing the same stream, or else uses its prefetched stream URL
+     */
+    public AudioTrack prepare(AudioTrack track) {
+        if (track instanceof CachedOpusAudioTrack || track instanceof SharedAudioTrack)
+            return track;
+        if (frameCache != null) {
+            AudioTrack cached = frameCache.lookup(track);
+            if (cached != null)
+                return cached;
+        }
+        AudioTrack prepared = sharedPlayback == null ? track : sharedPlayback.share(track);
+        return prepared == track && streamPrefetcher != null ? streamPrefetcher.wrap(track) : prepared;
+    }
+
+    /**
+     * @return the frame cache, or null if it is disabled
+     */
+    public OpusFrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    /**
+     * @return the local music library, or null if there is none
+     */
+    public LibraryIndex getLibrary() {
+        return library;
+    }
+
+    /**
+     * @return the search cache, or null if it is disabled
+     */
+    public SearchCache getSearchCache() {
+        return searchCache;
+    }
+
+    public FrameBufferBudget getFrameBufferBudget() {
+        return frameBufferBudget;
+    }
+
+    /**
+     * @return the stream prefetcher, or null if it is disabled
+     */
+    public StreamPrefetcher getStreamPrefetcher() {
+        return streamPrefetcher;
+    }
+
+    /**
+     * @return the loudness measurements, or null if normalization is disabled
+     */
+    public LoudnessCache getLoudnessCache() {
+        return loudnessCache;
+    }
+
     public boolean hasHandler(Guild guild) {
         return guild.getAudioManager().getSendingHandler() != null;
     }
 
-    public AudioHandler setUpHandler(Guild guild) {
+    public synchronized AudioHandler setUpHandler(Guild guild) {
         AudioHandler handler;
         if (guild.getAudioManager().getSendingHandler() == null) {
             AudioPlayer player = createPlayer();
             player.setVolume(bot.getSettingsManager().getSettings(guild).getVolume());
-            handler = new AudioHandler(this, guild, player);
+            Parked state = parked.remove(guild.getIdLong());
+            FairQueue<QueuedTrack> queue = state == null ? null : state.queue;
+            FilterSettings filters = state == null ? null : state.filters;
+            handler = new AudioHandler(this, guild, player, queue == null ? new FairQueue<>() : queue,
+                    filters == null ? new FilterSettings() : filters);
             player.addListener(handler);
             guild.getAudioManager().setSendingHandler(handler);
         } else
             handler = (AudioHandler) guild.getAudioManager().getSendingHandler();
+        handler.touch();
         return handler;
     }
+
+    /**
+     * Destroys the players of guilds that haven't played anything or used a music command for the configured idle
+     * time, and detaches their handlers. A queue that isn't empty and filters that are set are kept for a day, for
+     * when the handler is set up again.
+     */
+    private synchronized void releaseIdle() {
+        JDA jda = bot.getJDA();
+        if (jda == null)
+            return;
+        long timeout = TimeUnit.MINUTES.toMillis(bot.getConfig().getIdleMinutes());
+        long now = System.currentTimeMillis();
+        parked.values().removeIf(state -> now - state.since >= PARKED_TTL);
+        int released = 0;
+        for (Guild guild : jda.getGuilds()) {
+            AudioHandler handler = (AudioHandler) guild.getAudioManager().getSendingHandler();
+            if (handler == null || !handler.isIdle(timeout))
+                continue;
+            guild.getAudioManager().setSendingHandler(null);
+            handler.destroy();
+            FairQueue<QueuedTrack> queue = handler.getQueue().isEmpty() ? null : handler.getQueue();
+            FilterSettings filters = handler.getFilterSettings().isNeutral() ? null : handler.getFilterSettings();
+            if (queue != null || filters != null)
+                parked.put(guild.getIdLong(), new Parked(queue, filters, now));
+            bot.getMetrics().removeGuild(guild.getIdLong());
+            released++;
+        }
+        if (released > 0)
+            LoggerFactory.getLogger("PlayerManager").info("Released " + released + " idle players");
+    }
+
+    private static class Parked {
+        private final FairQueue<QueuedTrack> queue;
+        private final FilterSettings filters;
+        private final long since;
+
+        private Parked(FairQueue<QueuedTrack> queue, FilterSettings filters, long since) {
+            this.queue = queue;
+            this.filters = filters;
+            this.since = since;
+        }
+    }
 }
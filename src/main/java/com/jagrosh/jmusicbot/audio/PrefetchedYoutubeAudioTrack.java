@@ -0,0 +1,42 @@
+package com.jagrosh.jmusicbot.audio;
+
+import com.sedmelluq.discord.lavaplayer.container.matroska.MatroskaAudioTrack;
+import com.sedmelluq.discord.lavaplayer.container.mpeg.MpegAudioTrack;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubePersistentHttpStream;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+/**
+ * A YouTube track whose stream URL was resolved by the {@link StreamPrefetcher}, so it starts reading the stream right
+ * away. Falls back to resolving the URL itself if it expired in the meantime.
+ */
+public class PrefetchedYoutubeAudioTrack extends YoutubeAudioTrack {
+    private final YoutubeAudioSourceManager sourceManager;
+    private final StreamPrefetcher.Locator locator;
+
+    public PrefetchedYoutubeAudioTrack(AudioTrackInfo trackInfo, YoutubeAudioSourceManager sourceManager,
+            StreamPrefetcher.Locator locator) {
+        super(trackInfo, sourceManager);
+        this.sourceManager = sourceManager;
+        this.locator = locator;
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor localExecutor) throws Exception {
+        if (!locator.isValidFor(getDuration())) {
+            super.process(localExecutor);
+            return;
+        }
+        try (HttpInterface httpInterface = sourceManager.getHttpInterface();
+                YoutubePersistentHttpStream stream = new YoutubePersistentHttpStream(httpInterface, locator.getUrl(),
+                        locator.getFormat().getContentLength())) {
+            if (locator.getFormat().getType().getMimeType().endsWith("/webm"))
+                processDelegate(new MatroskaAudioTrack(trackInfo, stream), localExecutor);
+            else
+                processDelegate(new MpegAudioTrack(trackInfo, stream), localExecutor);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration;
+import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration.ResamplingQuality;
+
+/**
+ * Steps the resampling and Opus encoding quality down while the host is under pressure, and back up once it recovers.
+ * Pressure is either high process CPU or a share of expected audio frames that weren't ready in time.
+ * <p>
+ * Only affects playback that isn't Opus passthrough, ie. non-Opus sources or a volume other than 100.
+ */
+public class QualityGovernor {
+    public static final String LEVEL = "audio.quality_level";
+    public static final String STEPS_DOWN = "audio.quality_steps_down";
+    public static final String STEPS_UP = "audio.quality_steps_up";
+
+    private static final Logger LOG = LoggerFactory.getLogger("QualityGovernor");
+
+    private static final long INTERVAL = 5;
+    private static final TimeUnit INTERVAL_UNIT = TimeUnit.SECONDS;
+    // Consecutive calm samples needed before stepping back up, so quality doesn't flap.
+    private static final int CALM_SAMPLES = 6;
+
+    private static final double CPU_HIGH = 0.85;
+    private static final double CPU_LOW = 0.5;
+    private static final double MISSED_HIGH = 0.02;
+    private static final double MISSED_LOW = 0.002;
+
+    // Highest quality first, starting at lavaplayer's own defaults of LOW resampling with encoding quality 10, so a
+    // calm host never spends more CPU on audio than it would without the governor.
+    private static final ResamplingQuality[] RESAMPLING = { ResamplingQuality.LOW, ResamplingQuality.LOW,
+            ResamplingQuality.LOW, ResamplingQuality.LOW };
+    private static final int[] ENCODING = { 10, 8, 6, 4 };
+    private static final int DEFAULT_LEVEL = 0;
+
+    private final AudioConfiguration configuration;
+    private final Counter frames;
+    private final Counter underruns;
+    private final Counter stepsDown;
+    private final Counter stepsUp;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    private volatile int level = DEFAULT_LEVEL;
+    private long lastFrames;
+    private long lastUnderruns;
+    private int calmSamples = 0;
+
+    public QualityGovernor(AudioConfiguration configuration, MetricsRegistry metrics) {
+        this.configuration = configuration;
+        this.frames = metrics.counter(PlaybackMetrics.FRAMES);
+        this.underruns = metrics.counter(PlaybackMetrics.UNDERRUNS);
+        this.stepsDown = metrics.counter(STEPS_DOWN);
+        this.stepsUp = metrics.counter(STEPS_UP);
+        metrics.gauge(LEVEL, () -> level);
+    }
+
+    public void init(ScheduledExecutorService threadpool) {
+        apply();
+        lastFrames = frames.get();
+        lastUnderruns = underruns.get();
+        threadpool.scheduleWithFixedDelay(this::sample, INTERVAL, INTERVAL, INTERVAL_UNIT);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    private void sample() {
+        long currentFrames = frames.get();
+        long currentUnderruns = underruns.get();
+        long frameDelta = currentFrames - lastFrames;
+        double missed = frameDelta <= 0 ? 0 : (double) (currentUnderruns - lastUnderruns) / frameDelta;
+        lastFrames = currentFrames;
+        lastUnderruns = currentUnderruns;
+        double cpu = processCpuLoad();
+
+        if (cpu > CPU_HIGH || missed > MISSED_HIGH) {
+            calmSamples = 0;
+            if (level < ENCODING.length - 1) {
+                level++;
+                stepsDown.increment();
+                apply();
+                LOG.info(String.format("Lowered audio quality to level %d (cpu %.0f%%, missed frames %.1f%%)", level,
+                        cpu * 100, missed * 100));
+            }
+        } else if (cpu < CPU_LOW && missed < MISSED_LOW) {
+            if (level > DEFAULT_LEVEL && ++calmSamples >= CALM_SAMPLES) {
+                calmSamples = 0;
+                level--;
+                stepsUp.increment();
+                apply();
+                LOG.info(String.format("Raised audio quality to level %d (cpu %.0f%%, missed frames %.1f%%)", level,
+                        cpu * 100, missed * 100));
+            }
+        } else {
+            calmSamples = 0;
+        }
+    }
+
+    private void apply() {
+        configuration.setResamplingQuality(RESAMPLING[level]);
+        configuration.setOpusEncodingQuality(ENCODING[level]);
+    }
+
+    /**
+     * @return the recent CPU usage of this process between 0 and 1, or 0 if the JVM doesn't report it
+     */
+    private double processCpuLoad() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            double load = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+            return load < 0 ? 0 : load;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,322 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.jagrosh.jmusicbot.utils.TrackUtil;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+
+/**
+ * Remembers what identifiers resolved to, so loading the same link or query again doesn't go back to its source.
+ * <p>
+ * Results are kept as encoded tracks and decoded into new tracks for every load. Tracks and playlists are kept for a
+ * few hours. Links that matched nothing or failed with a common error are kept for a few minutes. Entries are evicted
+ * least recently used first, once there are too many or they take too much memory. The cache is saved to a file
+ * shortly after it changes and loaded again on start.
+ */
+public class ResolutionCache {
+    public static final String HITS = "resolve.hits";
+    public static final String MISSES = "resolve.misses";
+    public static final String ENTRIES = "resolve.entries";
+
+    private static final Logger LOG = LoggerFactory.getLogger("ResolutionCache");
+
+    private static final int MAGIC = 0x52534C56;
+    private static final int MAX_ENTRIES = 5000;
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+    private static final long TRACK_TTL = TimeUnit.HOURS.toMillis(6);
+    private static final long PLAYLIST_TTL = TimeUnit.HOURS.toMillis(1);
+    private static final long NEGATIVE_TTL = TimeUnit.MINUTES.toMillis(10);
+    private static final long SAVE_DELAY = 60;
+
+    private static final byte TRACK = 0;
+    private static final byte PLAYLIST = 1;
+    private static final byte NO_MATCHES = 2;
+    private static final byte FAILED = 3;
+
+    private final Path file;
+    private final DefaultAudioPlayerManager manager;
+    private final ScheduledExecutorService threadpool;
+    private final Counter hits;
+    private final Counter misses;
+
+    // Identifier -> result, in least recently used order.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private boolean saveScheduled = false;
+
+    public ResolutionCache(Path file, DefaultAudioPlayerManager manager, ScheduledExecutorService threadpool,
+            MetricsRegistry metrics) {
+        this.file = file;
+        this.manager = manager;
+        this.threadpool = threadpool;
+        this.hits = metrics.counter(HITS);
+        this.misses = metrics.counter(MISSES);
+        metrics.gauge(ENTRIES, this::size);
+    }
+
+    public void init() {
+        long now = System.currentTimeMillis();
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC)
+                return;
+            int count = input.readInt();
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    String identifier = input.readUTF();
+                    Entry entry = Entry.read(input);
+                    if (entry.expires > now)
+                        put(identifier, entry);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing has been resolved yet.
+        } catch (IOException e) {
+            LOG.warn("Failed to load resolved tracks: " + e);
+        }
+    }
+
+    public synchronized long size() {
+        return entries.size();
+    }
+
+    /**
+     * Passes the remembered result for an identifier to the handler, on another thread.
+     *
+     * @return false if there is no result for the identifier, which then has to be loaded
+     */
+    public boolean replay(String identifier, AudioLoadResultHandler handler) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(identifier);
+            if (entry != null && entry.expires <= System.currentTimeMillis()) {
+                remove(identifier);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return false;
+        }
+
+        List<AudioTrack> tracks = new ArrayList<>(entry.tracks.length);
+        try {
+            for (byte[] encoded : entry.tracks)
+                tracks.add(TrackUtil.decode(manager, encoded));
+        } catch (IOException e) {
+            synchronized (this) {
+                remove(identifier);
+            }
+            misses.increment();
+            return false;
+        }
+
+        hits.increment();
+        Entry hit = entry;
+        threadpool.execute(() -> {
+            switch (hit.kind) {
+                case TRACK:
+                    handler.trackLoaded(tracks.get(0));
+                    break;
+                case PLAYLIST:
+                    handler.playlistLoaded(new BasicAudioPlaylist(hit.name, tracks,
+                            hit.selected >= 0 ? tracks.get(hit.selected) : null, hit.search));
+                    break;
+                case NO_MATCHES:
+                    handler.noMatches();
+                    break;
+                default:
+                    handler.loadFailed(new FriendlyException(hit.name, FriendlyException.Severity.COMMON, null));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return a handler that remembers the result of loading the identifier and passes it on
+     */
+    public AudioLoadResultHandler recorder(String identifier, AudioLoadResultHandler handler) {
+        return new AudioLoadResultHandler() {
+            @Override
+            public void trackLoaded(AudioTrack track) {
+                store(identifier, TRACK, null, -1, false, TRACK_TTL, Collections.singletonList(track));
+                handler.trackLoaded(track);
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist) {
+                List<AudioTrack> tracks = playlist.getTracks();
+                int selected = playlist.getSelectedTrack() == null ? -1 : tracks.indexOf(playlist.getSelectedTrack());
+                store(identifier, PLAYLIST, playlist.getName(), selected, playlist.isSearchResult(),
+                        playlist.isSearchResult() ? TRACK_TTL : PLAYLIST_TTL, tracks);
+                handler.playlistLoaded(playlist);
+            }
+
+            @Override
+            public void noMatches() {
+                store(identifier, NO_MATCHES, null, -1, false, NEGATIVE_TTL, Collections.emptyList());
+                handler.noMatches();
+            }
+
+            @Override
+            public void loadFailed(FriendlyException exception) {
+                // Other failures may be a network problem, which shouldn't stick.
+                if (exception.severity == FriendlyException.Severity.COMMON && exception.getMessage() != null)
+                    store(identifier, FAILED, exception.getMessage(), -1, false, NEGATIVE_TTL, Collections.emptyList());
+                handler.loadFailed(exception);
+            }
+        };
+    }
+
+    private void store(String identifier, byte kind, String name, int selected, boolean search, long ttl,
+            List<AudioTrack> tracks) {
+        byte[][] encoded = new byte[tracks.size()][];
+        try {
+            for (int i = 0; i < encoded.length; i++) {
+                AudioTrack track = tracks.get(i);
+                // Local files can change at any time, and are quick to load anyway.
+                if (track.getSourceManager() == null || "local".equals(track.getSourceManager().getSourceName()))
+                    return;
+                encoded[i] = TrackUtil.encode(manager, track);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not every source can encode its tracks.
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis() + ttl, kind, name, selected, search, encoded);
+        synchronized (this) {
+            put(identifier, entry);
+            if (saveScheduled)
+                return;
+            saveScheduled = true;
+        }
+        if (!threadpool.isShutdown())
+            threadpool.schedule(this::save, SAVE_DELAY, TimeUnit.SECONDS);
+    }
+
+    private void put(String identifier, Entry entry) {
+        remove(identifier);
+        entries.put(identifier, entry);
+        bytes += entry.size();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > MAX_ENTRIES || bytes > MAX_BYTES) && eldest.hasNext()) {
+            bytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    private void remove(String identifier) {
+        Entry removed = entries.remove(identifier);
+        if (removed != null)
+            bytes -= removed.size();
+    }
+
+    private void save() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long now = System.currentTimeMillis();
+        try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(buffer))) {
+            synchronized (this) {
+                saveScheduled = false;
+                output.writeInt(MAGIC);
+                output.writeInt((int) entries.values().stream().filter(e -> e.expires > now).count());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (entry.getValue().expires <= now)
+                        continue;
+                    output.writeUTF(entry.getKey());
+                    entry.getValue().write(output);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to encode resolved tracks: " + e);
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, buffer.toByteArray());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("Failed to save resolved tracks: " + e);
+        }
+    }
+
+    private static class Entry {
+        private final long expires;
+        private final byte kind;
+        // The playlist name, or the message of a failure.
+        private final String name;
+        private final int selected;
+        private final boolean search;
+        private final byte[][] tracks;
+
+        private Entry(long expires, byte kind, String name, int selected, boolean search, byte[][] tracks) {
+            this.expires = expires;
+            this.kind = kind;
+            this.name = name;
+            this.selected = selected;
+            this.search = search;
+            this.tracks = tracks;
+        }
+
+        private long size() {
+            long size = 64 + (name == null ? 0 : name.length() * 2);
+            for (byte[] track : tracks)
+                size += track.length + 16;
+            return size;
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            output.writeLong(expires);
+            output.writeByte(kind);
+            output.writeBoolean(name != null);
+            if (name != null)
+                output.writeUTF(name);
+            output.writeInt(selected);
+            output.writeBoolean(search);
+            output.writeInt(tracks.length);
+            for (byte[] track : tracks) {
+                output.writeInt(track.length);
+                output.write(track);
+            }
+        }
+
+        private static Entry read(DataInputStream input) throws IOException {
+            long expires = input.readLong();
+            byte kind = input.readByte();
+            String name = input.readBoolean() ? input.readUTF() : null;
+            int selected = input.readInt();
+            boolean search = input.readBoolean();
+            byte[][] tracks = new byte[input.readInt()][];
+            for (int i = 0; i < tracks.length; i++) {
+                tracks[i] = new byte[input.readInt()];
+                input.readFully(tracks[i]);
+            }
+            return new Entry(expires, kind, name, selected, search, tracks);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.jagrosh.jmusicbot.utils.TrackUtil;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+
+/**
+ * Remembers the top results of recent searches, so a query that was searched before in any guild is answered without
+ * asking the source. Queries are compared ignoring case and spacing. Results only stay for a short while, since search
+ * rankings change, and every search source has its own bounded share, so one can't push out the results of another.
+ */
+public class SearchCache {
+    public static final String HITS = "search.hits";
+    public static final String MISSES = "search.misses";
+
+    private static final String[] PREFIXES = { "ytsearch:", "scsearch:" };
+    // As many as the search menu shows.
+    private static final int MAX_RESULTS = 10;
+    private static final int MAX_QUERIES = 2000;
+    private static final long TTL = TimeUnit.MINUTES.toMillis(30);
+
+    private final DefaultAudioPlayerManager manager;
+    private final Counter hits;
+    private final Counter misses;
+    // Search prefix -> normalized query -> results, in least recently used order.
+    private final Map<String, LinkedHashMap<String, Entry>> partitions = new HashMap<>();
+
+    public SearchCache(DefaultAudioPlayerManager manager, MetricsRegistry metrics) {
+        this.manager = manager;
+        this.hits = metrics.counter(HITS);
+        this.misses = metrics.counter(MISSES);
+    }
+
+    /**
+     * @return whether the identifier is a search this caches
+     */
+    public static boolean isSearch(String identifier) {
+        return prefixOf(identifier) != null;
+    }
+
+    /**
+     * @return the remembered results of a search, or null if it has to be searched
+     */
+    public AudioPlaylist lookup(String identifier) {
+        String prefix = prefixOf(identifier);
+        if (prefix == null)
+            return null;
+        String query = normalize(identifier.substring(prefix.length()));
+        Entry entry;
+        synchronized (this) {
+            LinkedHashMap<String, Entry> partition = partitions.get(prefix);
+            entry = partition == null ? null : partition.get(query);
+            if (entry != null && entry.expires <= System.currentTimeMillis()) {
+                partition.remove(query);
+                entry = null;
+            }
+        }
+        if (entry == null)
+            return null;
+
+        List<AudioTrack> tracks = new ArrayList<>(entry.tracks.length);
+        try {
+            for (byte[] encoded : entry.tracks)
+                tracks.add(TrackUtil.decode(manager, encoded));
+        } catch (IOException e) {
+            return null;
+        }
+        hits.increment();
+        return new BasicAudioPlaylist(entry.name, tracks, null, true);
+    }
+
+    /**
+     * @return a handler that remembers the results of the search and passes them on
+     */
+    public AudioLoadResultHandler recorder(String identifier, AudioLoadResultHandler handler) {
+        misses.increment();
+        return new AudioLoadResultHandler() {
+            @Override
+            public void trackLoaded(AudioTrack track) {
+                handler.trackLoaded(track);
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist) {
+                if (playlist.isSearchResult())
+                    store(identifier, playlist);
+                handler.playlistLoaded(playlist);
+            }
+
+            @Override
+            public void noMatches() {
+                handler.noMatches();
+            }
+
+            @Override
+            public void loadFailed(FriendlyException exception) {
+                handler.loadFailed(exception);
+            }
+        };
+    }
+
+    private void store(String identifier, AudioPlaylist playlist) {
+        String prefix = prefixOf(identifier);
+        List<AudioTrack> tracks = playlist.getTracks();
+        byte[][] encoded = new byte[Math.min(MAX_RESULTS, tracks.size())][];
+        try {
+            for (int i = 0; i < encoded.length; i++)
+                encoded[i] = TrackUtil.encode(manager, tracks.get(i));
+        } catch (IOException | RuntimeException e) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis() + TTL, playlist.getName(), encoded);
+        synchronized (this) {
+            partitions.computeIfAbsent(prefix, p -> new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_QUERIES;
+                }
+            }).put(normalize(identifier.substring(prefix.length())), entry);
+        }
+    }
+
+    private static String prefixOf(String identifier) {
+        for (String prefix : PREFIXES) {
+            if (identifier.startsWith(prefix))
+                return prefix;
+        }
+        return null;
+    }
+
+    private static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static class Entry {
+        private final long expires;
+        private final String name;
+        private final byte[][] tracks;
+
+        private Entry(long expires, String name, byte[][] tracks) {
+            this.expires = expires;
+            this.name = name;
+            this.tracks = tracks;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.nio.ByteBuffer;
+
+import com.sedmelluq.discord.lavaplayer.container.common.OpusPacketRouter;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BaseAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+/**
+ * Plays the frames of a {@link SharedPlayback} source. The frames are already Opus, so lavaplayer passes them through
+ * untouched unless this guild's volume or filters need them decoded.
+ */
+public class SharedAudioTrack extends BaseAudioTrack {
+    private final AudioTrack original;
+    private final SharedPlayback.Source source;
+
+    SharedAudioTrack(AudioTrack original, SharedPlayback.Source source) {
+        super(original.getInfo());
+        this.original = original;
+        this.source = source;
+    }
+
+    /**
+     * @return the track this plays, for anything that needs its source specific type
+     */
+    public AudioTrack getOriginal() {
+        return original;
+    }
+
+    @Override
+    public boolean isSeekable() {
+        return false;
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor executor) throws Exception {
+        ByteBuffer packet = ByteBuffer.allocate(StandardAudioDataFormats.DISCORD_OPUS.maximumChunkSize());
+        OpusPacketRouter router = new OpusPacketRouter(executor.getProcessingContext(), 48000, 2);
+        long[] next = { source.subscribe() };
+        try {
+            executor.executeProcessingLoop(() -> {
+                while ((next[0] = source.read(next[0], packet)) != -1)
+                    router.process(packet);
+            }, null);
+        } finally {
+            source.unsubscribe();
+            router.close();
+        }
+    }
+
+    @Override
+    protected AudioTrack makeShallowClone() {
+        return original.makeClone();
+    }
+}
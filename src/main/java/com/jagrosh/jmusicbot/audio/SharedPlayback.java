@@ -0,0 +1,221 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+
+/**
+ * Decodes a stream once when several guilds play it, and fans the Opus frames out to each of them.
+ * <p>
+ * Live streams are always shared. Autoplay tracks are shared while the first guild playing them is still within the
+ * buffered window, so guilds starting the same autoplay track together hear it from the start. Tracks requested by
+ * users are played privately, since they are seeked and paused independently.
+ * <p>
+ * Each source keeps the last {@link #RING_FRAMES} frames. Guilds play them through a {@link SharedAudioTrack}, which
+ * passes the frames straight through at volume 100 and re-encodes them with the guild's volume otherwise.
+ */
+public class SharedPlayback {
+    public static final String SOURCES = "shared.sources";
+    public static final String SUBSCRIPTIONS = "shared.subscriptions";
+
+    private static final Logger LOG = LoggerFactory.getLogger("SharedPlayback");
+
+    // 10 seconds of audio.
+    static final int RING_FRAMES = 500;
+    private static final long FRAME_MS = 20;
+    // How long a source is kept without any subscribers, so a preloaded or restarted track can still join it.
+    private static final int IDLE_FRAMES = 250;
+
+    private final PlayerManager manager;
+    private final Map<String, Source> sources = new ConcurrentHashMap<>();
+    private final Counter subscriptions;
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "shared-playback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SharedPlayback(PlayerManager manager, MetricsRegistry metrics) {
+        this.manager = manager;
+        this.subscriptions = metrics.counter(SUBSCRIPTIONS);
+        metrics.gauge(SOURCES, () -> sources.size());
+    }
+
+    public void init() {
+        ticker.scheduleAtFixedRate(this::tick, FRAME_MS, FRAME_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return a track that plays from a shared source, or the given track if it should be played privately
+     */
+    public synchronized AudioTrack share(AudioTrack track) {
+        if (track instanceof SharedAudioTrack)
+            return track;
+        Long requester = track.getUserData(Long.class);
+        if (!track.getInfo().isStream && requester != null && requester != 0)
+            return track;
+
+        String key = track.getIdentifier();
+        Source source = sources.get(key);
+        if (source == null || source.isEnded()) {
+            if (source != null)
+                source.close();
+            source = new Source(key, track.makeClone());
+            sources.put(key, source);
+        } else if (!source.isJoinable()) {
+            return track;
+        }
+        subscriptions.increment();
+        SharedAudioTrack shared = new SharedAudioTrack(track, source);
+        shared.setUserData(track.getUserData());
+        return shared;
+    }
+
+    private void tick() {
+        for (Source source : sources.values()) {
+            try {
+                source.pump();
+            } catch (Exception e) {
+                LOG.warn("Failed to read from shared source " + source.key, e);
+                source.close();
+            }
+            if (source.isFinished()) {
+                synchronized (this) {
+                    sources.remove(source.key, source);
+                }
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * A single player decoding one stream, and the ring of frames it has produced.
+     */
+    class Source extends AudioEventAdapter {
+        private final String key;
+        private final boolean stream;
+        private final AudioPlayer player;
+        // Counts the source player against the frame buffer memory like any guild's player.
+        private final AdaptiveFrameBuffer frameBuffer;
+        private final ByteBuffer buffer = ByteBuffer.allocate(StandardAudioDataFormats.DISCORD_OPUS.maximumChunkSize());
+        private final MutableAudioFrame frame = new MutableAudioFrame();
+        private final byte[][] frames = new byte[RING_FRAMES][];
+        private final int[] lengths = new int[RING_FRAMES];
+
+        private long written = 0;
+        private int subscribers = 0;
+        private int idleFrames = 0;
+        private boolean ended = false;
+
+        private Source(String key, AudioTrack track) {
+            this.key = key;
+            this.stream = track.getInfo().isStream;
+            this.frame.setBuffer(buffer);
+            this.player = manager.createPlayer();
+            this.frameBuffer = new AdaptiveFrameBuffer(manager.getFrameBufferBudget());
+            this.player.setFrameBufferDuration(frameBuffer.getDuration());
+            this.player.addListener(this);
+            this.player.playTrack(track);
+        }
+
+        synchronized boolean isEnded() {
+            return ended;
+        }
+
+        /**
+         * A stream can be joined at any point, a track only while its first frame is still buffered.
+         */
+        synchronized boolean isJoinable() {
+            return !ended && (stream || written < RING_FRAMES);
+        }
+
+        synchronized boolean isFinished() {
+            return (ended && subscribers == 0) || idleFrames >= IDLE_FRAMES;
+        }
+
+        /**
+         * @return the index of the first frame the new subscriber should read
+         */
+        synchronized long subscribe() {
+            subscribers++;
+            idleFrames = 0;
+            return stream ? written : Math.max(0, written - RING_FRAMES);
+        }
+
+        synchronized void unsubscribe() {
+            subscribers--;
+        }
+
+        /**
+         * Copies frame {@code index} into {@code out}, waiting for it to be produced if needed. A subscriber that has
+         * fallen behind the ring skips ahead to the oldest frame still in it.
+         *
+         * @return the index of the next frame to read, or -1 once the source has ended
+         */
+        synchronized long read(long index, ByteBuffer out) throws InterruptedException {
+            while (index >= written && !ended)
+                wait();
+            if (index >= written)
+                return -1;
+            index = Math.max(index, written - RING_FRAMES);
+            int slot = (int) (index % RING_FRAMES);
+            out.clear();
+            out.put(frames[slot], 0, lengths[slot]);
+            out.flip();
+            return index + 1;
+        }
+
+        private void pump() {
+            synchronized (this) {
+                if (ended)
+                    return;
+                idleFrames = subscribers == 0 ? idleFrames + 1 : 0;
+            }
+            buffer.clear();
+            if (!player.provide(frame))
+                return;
+            buffer.flip();
+            synchronized (this) {
+                int slot = (int) (written % RING_FRAMES);
+                if (frames[slot] == null)
+                    frames[slot] = new byte[buffer.capacity()];
+                lengths[slot] = buffer.remaining();
+                buffer.get(frames[slot], 0, lengths[slot]);
+                written++;
+                notifyAll();
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                ended = true;
+                notifyAll();
+            }
+            player.destroy();
+            frameBuffer.release();
+        }
+
+        @Override
+        public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason) {
+            synchronized (this) {
+                ended = true;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeTrackDetails;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeTrackFormat;
+import com.sedmelluq.discord.lavaplayer.tools.Units;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+/**
+ * Resolves the stream URLs of the next few YouTube tracks in each guild's queue ahead of time, so they can start
+ * playing without first fetching the video details and deciphering the stream's signature.
+ * <p>
+ * Resolved URLs are kept for as long as a track stays near the front of a queue, and resolved again shortly before
+ * YouTube expires them.
+ */
+public class StreamPrefetcher {
+    public static final String HITS = "prefetch.hits";
+    public static final String MISSES = "prefetch.misses";
+    public static final String RESOLVED = "prefetch.resolved";
+    public static final String FAILURES = "prefetch.failures";
+
+    private static final Logger LOG = LoggerFactory.getLogger("StreamPrefetcher");
+
+    private static final int RESOLVER_THREADS = 2;
+    // Used when the URL doesn't say when it expires.
+    private static final long DEFAULT_LIFETIME = TimeUnit.HOURS.toMillis(1);
+    private static final long REFRESH_MARGIN = TimeUnit.MINUTES.toMillis(30);
+    private static final long RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private final YoutubeAudioSourceManager youtube;
+    private final int ahead;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter resolved;
+    private final Counter failures;
+    private final ExecutorService resolver = Executors.newFixedThreadPool(RESOLVER_THREADS, r -> {
+        Thread thread = new Thread(r, "stream-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Video id -> entry, for every track near the front of some queue.
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<Long, Set<String>> upcoming = new HashMap<>();
+
+    public StreamPrefetcher(YoutubeAudioSourceManager youtube, int ahead, MetricsRegistry metrics) {
+        this.youtube = youtube;
+        this.ahead = ahead;
+        this.hits = metrics.counter(HITS);
+        this.misses = metrics.counter(MISSES);
+        this.resolved = metrics.counter(RESOLVED);
+        this.failures = metrics.counter(FAILURES);
+    }
+
+    /**
+     * @return how many entries at the front of a queue are resolved ahead of time
+     */
+    public int getAhead() {
+        return ahead;
+    }
+
+    /**
+     * Resolves the tracks at the front of a guild's queue that aren't resolved yet, and drops the ones that left it.
+     */
+    public synchronized void update(long guildId, List<AudioTrack> tracks) {
+        Set<String> ids = new HashSet<>();
+        for (AudioTrack track : tracks) {
+            if (track instanceof YoutubeAudioTrack && !track.getInfo().isStream)
+                ids.add(track.getIdentifier());
+        }
+        Set<String> previous = ids.isEmpty() ? upcoming.remove(guildId) : upcoming.put(guildId, ids);
+        release(guildId, previous, ids);
+
+        long now = System.currentTimeMillis();
+        for (String id : ids) {
+            Entry entry = entries.computeIfAbsent(id, Entry::new);
+            entry.guilds.add(guildId);
+            if (!entry.resolving && now >= entry.retryAt
+                    && (entry.locator == null || entry.locator.expiresAt - now < REFRESH_MARGIN)) {
+                entry.resolving = true;
+                resolver.execute(() -> resolve(entry));
+            }
+        }
+    }
+
+    public synchronized void forget(long guildId) {
+        release(guildId, upcoming.remove(guildId), Collections.emptySet());
+    }
+
+    /**
+     * @return a track that plays from the resolved stream URL of the given one, or the track itself if there is no
+     *         usable URL for it
+     */
+    public AudioTrack wrap(AudioTrack track) {
+        if (!(track instanceof YoutubeAudioTrack) || track instanceof PrefetchedYoutubeAudioTrack
+                || track.getInfo().isStream)
+            return track;
+        Locator locator;
+        synchronized (this) {
+            Entry entry = entries.get(track.getIdentifier());
+            locator = entry == null ? null : entry.locator;
+        }
+        if (locator == null || !locator.isValidFor(track.getDuration())) {
+            misses.increment();
+            return track;
+        }
+        hits.increment();
+        AudioTrack prefetched = new PrefetchedYoutubeAudioTrack(track.getInfo(), youtube, locator);
+        prefetched.setUserData(track.getUserData());
+        return prefetched;
+    }
+
+    private void release(long guildId, Set<String> previous, Set<String> current) {
+        if (previous == null)
+            return;
+        for (String id : previous) {
+            if (current.contains(id))
+                continue;
+            Entry entry = entries.get(id);
+            if (entry != null && entry.guilds.remove(guildId) && entry.guilds.isEmpty())
+                entries.remove(id);
+        }
+    }
+
+    private void resolve(Entry entry) {
+        Locator locator = null;
+        try (HttpInterface httpInterface = youtube.getHttpInterface()) {
+            YoutubeTrackDetails details = youtube.getTrackDetailsLoader().loadDetails(httpInterface, entry.id);
+            if (details != null) {
+                YoutubeTrackFormat format = YoutubeAudioTrack.findBestSupportedFormat(
+                        details.getFormats(httpInterface, youtube.getSignatureResolver()));
+                URI url = youtube.getSignatureResolver().resolveFormatUrl(httpInterface, details.getPlayerScript(),
+                        format);
+                // Without a length the track is played as a stream, which can't use a prefetched URL.
+                if (format.getContentLength() != Units.CONTENT_LENGTH_UNKNOWN)
+                    locator = new Locator(format, url, expiry(url));
+            }
+        } catch (Exception e) {
+            LOG.debug("Failed to resolve the stream of " + entry.id, e);
+        }
+
+        (locator == null ? failures : resolved).increment();
+        synchronized (this) {
+            entry.resolving = false;
+            if (locator != null)
+                entry.locator = locator;
+            else
+                entry.retryAt = System.currentTimeMillis() + RETRY_DELAY;
+        }
+    }
+
+    private static long expiry(URI url) {
+        String query = url.getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("expire=")) {
+                    try {
+                        return TimeUnit.SECONDS.toMillis(Long.parseLong(parameter.substring(7)));
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return System.currentTimeMillis() + DEFAULT_LIFETIME;
+    }
+
+    private static class Entry {
+        private final String id;
+        private final Set<Long> guilds = new HashSet<>();
+        private Locator locator;
+        private boolean resolving = false;
+        private long retryAt = 0;
+
+        private Entry(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * A resolved stream: the chosen format and its signed URL.
+     */
+    public static class Locator {
+        // A URL must stay valid this much longer than the track, since seeking reconnects to it.
+        private static final long PLAY_MARGIN = TimeUnit.MINUTES.toMillis(5);
+
+        private final YoutubeTrackFormat format;
+        private final URI url;
+        private final long expiresAt;
+
+        private Locator(YoutubeTrackFormat format, URI url, long expiresAt) {
+            this.format = format;
+            this.url = url;
+            this.expiresAt = expiresAt;
+        }
+
+        public YoutubeTrackFormat getFormat() {
+            return format;
+        }
+
+        public URI getUrl() {
+            return url;
+        }
+
+        public boolean isValidFor(long duration) {
+            return expiresAt - System.currentTimeMillis() > duration + PLAY_MARGIN;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.jagrosh.jmusicbot.audio.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sedmelluq.discord.lavaplayer.filter.AudioFilter;
+import com.sedmelluq.discord.lavaplayer.filter.FloatPcmAudioFilter;
+import com.sedmelluq.discord.lavaplayer.filter.PcmFilterFactory;
+import com.sedmelluq.discord.lavaplayer.filter.UniversalPcmAudioFilter;
+import com.sedmelluq.discord.lavaplayer.filter.equalizer.Equalizer;
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+/**
+ * Builds the filter chain for a snapshot of a guild's {@link FilterSettings} and the loudness normalization of the
+ * playing track. Lavaplayer only rebuilds the chain of a playing track when the player gets a different factory, so
+ * every change creates a new one.
+ */
+public class FilterChainFactory implements PcmFilterFactory {
+    private final FilterSettings settings;
+    private final Normalization normalization;
+
+    /**
+     * @param normalization the normalization of the track, or null to play it at its own loudness
+     */
+    public FilterChainFactory(FilterSettings settings, Normalization normalization) {
+        this.settings = new FilterSettings(settings);
+        this.normalization = normalization;
+    }
+
+    @Override
+    public List<AudioFilter> buildChain(AudioTrack track, AudioDataFormat format, UniversalPcmAudioFilter output) {
+        List<AudioFilter> filters = new ArrayList<>();
+        FloatPcmAudioFilter next = output;
+
+        // Built from the output backwards, each filter passing its result on to the one after it.
+        if (settings.getSpeed() != 1.0) {
+            next = new SpeedFilter(format.channelCount, next, settings.getSpeed());
+            filters.add(next);
+        }
+        if (settings.isKaraoke()) {
+            next = new KaraokeFilter(format.channelCount, next);
+            filters.add(next);
+        }
+        if (settings.hasEqualizer() && Equalizer.isCompatible(format)) {
+            Equalizer equalizer = new Equalizer(format.channelCount, next);
+            for (int i = 0; i < Equalizer.BAND_COUNT; i++)
+                equalizer.setGain(i, settings.getEffectiveGain(i));
+            next = equalizer;
+            filters.add(equalizer);
+        }
+        // Normalization comes first, so the meter hears the track as it is and the gain doesn't depend on the effects.
+        if (normalization != null && normalization.getGain() != 1f) {
+            next = new GainFilter(format.channelCount, next, normalization.getGain());
+            filters.add(next);
+        }
+        if (normalization != null && normalization.getMeter() != null
+                && format.sampleRate == LoudnessMeter.SAMPLE_RATE) {
+            next = normalization.getMeter().filter(format.channelCount, next);
+            filters.add(next);
+        }
+
+        Collections.reverse(filters);
+        return filters;
+    }
+}
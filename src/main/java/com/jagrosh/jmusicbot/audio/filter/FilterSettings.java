@@ -0,0 +1,116 @@
+package com.jagrosh.jmusicbot.audio.filter;
+
+import java.util.Arrays;
+
+import com.sedmelluq.discord.lavaplayer.filter.equalizer.Equalizer;
+
+/**
+ * The effects a guild has turned on. Changed only by commands, a {@link FilterChainFactory} takes a copy.
+ */
+public class FilterSettings {
+    public static final float MIN_GAIN = -0.25f;
+    public static final float MAX_GAIN = 1.0f;
+    public static final double NIGHTCORE_SPEED = 1.25;
+
+    // Extra gain for the lowest equalizer bands at full bass boost.
+    private static final float[] BASS_BOOST = { 0.6f, 0.5f, 0.35f, 0.15f };
+
+    private final float[] gains;
+    private int bassBoost;
+    private double speed;
+    private boolean karaoke;
+
+    public FilterSettings() {
+        this.gains = new float[Equalizer.BAND_COUNT];
+        reset();
+    }
+
+    public FilterSettings(FilterSettings other) {
+        this.gains = other.gains.clone();
+        this.bassBoost = other.bassBoost;
+        this.speed = other.speed;
+        this.karaoke = other.karaoke;
+    }
+
+    public void reset() {
+        Arrays.fill(gains, 0f);
+        bassBoost = 0;
+        speed = 1.0;
+        karaoke = false;
+    }
+
+    public boolean isNeutral() {
+        return !hasEqualizer() && speed == 1.0 && !karaoke;
+    }
+
+    public boolean hasEqualizer() {
+        if (bassBoost != 0)
+            return true;
+        for (float gain : gains)
+            if (gain != 0f)
+                return true;
+        return false;
+    }
+
+    public float getGain(int band) {
+        return gains[band];
+    }
+
+    public void setGain(int band, float gain) {
+        gains[band] = Math.max(MIN_GAIN, Math.min(MAX_GAIN, gain));
+    }
+
+    /**
+     * @return the gain of the band with bass boost added on top
+     */
+    public float getEffectiveGain(int band) {
+        float gain = gains[band];
+        if (band < BASS_BOOST.length)
+            gain += BASS_BOOST[band] * bassBoost / 100f;
+        return Math.max(MIN_GAIN, Math.min(MAX_GAIN, gain));
+    }
+
+    public int getBassBoost() {
+        return bassBoost;
+    }
+
+    /**
+     * @param bassBoost from 0 to 100 percent
+     */
+    public void setBassBoost(int bassBoost) {
+        this.bassBoost = bassBoost;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public boolean isKaraoke() {
+        return karaoke;
+    }
+
+    public void setKaraoke(boolean karaoke) {
+        this.karaoke = karaoke;
+    }
+
+    @Override
+    public String toString() {
+        if (isNeutral())
+            return "none";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < gains.length; i++)
+            if (gains[i] != 0f)
+                sb.append("eq band ").append(i + 1).append(": `").append(gains[i]).append("`, ");
+        if (bassBoost != 0)
+            sb.append("bass boost: `").append(bassBoost).append("%`, ");
+        if (speed != 1.0)
+            sb.append(speed == NIGHTCORE_SPEED ? "nightcore" : "speed: `" + speed + "x`").append(", ");
+        if (karaoke)
+            sb.append("karaoke, ");
+        return sb.substring(0, sb.length() - 2);
+    }
+}
@@ -0,0 +1,43 @@
+package com.jagrosh.jmusicbot.audio.filter;
+
+import com.sedmelluq.discord.lavaplayer.filter.FloatPcmAudioFilter;
+
+/**
+ * Multiplies every sample by a fixed gain, in place. Samples pushed past full scale are clipped.
+ */
+public class GainFilter implements FloatPcmAudioFilter {
+    private final int channels;
+    private final FloatPcmAudioFilter next;
+    private final float gain;
+
+    public GainFilter(int channels, FloatPcmAudioFilter next, float gain) {
+        this.channels = channels;
+        this.next = next;
+        this.gain = gain;
+    }
+
+    @Override
+    public void process(float[][] input, int offset, int length) throws InterruptedException {
+        for (int c = 0; c < channels; c++) {
+            float[] samples = input[c];
+            for (int i = offset; i < offset + length; i++)
+                samples[i] = Math.max(-1f, Math.min(1f, samples[i] * gain));
+        }
+        next.process(input, offset, length);
+    }
+
+    @Override
+    public void seekPerformed(long requestedTime, long providedTime) {
+        next.seekPerformed(requestedTime, providedTime);
+    }
+
+    @Override
+    public void flush() throws InterruptedException {
+        next.flush();
+    }
+
+    @Override
+    public void close() {
+        next.close();
+    }
+}
@@ -0,0 +1,46 @@
+package com.jagrosh.jmusicbot.audio.filter;
+
+import com.sedmelluq.discord.lavaplayer.filter.FloatPcmAudioFilter;
+
+/**
+ * Removes what is panned to the center, which is usually the vocals, by subtracting the mid channel from both sides.
+ * Works in place, mono audio is passed through unchanged.
+ */
+public class KaraokeFilter implements FloatPcmAudioFilter {
+    private final int channels;
+    private final FloatPcmAudioFilter next;
+
+    public KaraokeFilter(int channels, FloatPcmAudioFilter next) {
+        this.channels = channels;
+        this.next = next;
+    }
+
+    @Override
+    public void process(float[][] input, int offset, int length) throws InterruptedException {
+        if (channels >= 2) {
+            float[] left = input[0];
+            float[] right = input[1];
+            for (int i = offset; i < offset + length; i++) {
+                float mid = (left[i] + right[i]) * 0.5f;
+                left[i] -= mid;
+                right[i] -= mid;
+            }
+        }
+        next.process(input, offset, length);
+    }
+
+    @Override
+    public void seekPerformed(long requestedTime, long providedTime) {
+        next.seekPerformed(requestedTime, providedTime);
+    }
+
+    @Override
+    public void flush() throws InterruptedException {
+        next.flush();
+    }
+
+    @Override
+    public void close() {
+        next.close();
+    }
+}
@@ -0,0 +1,164 @@
+package com.jagrosh.jmusicbot.audio.filter;
+
+import com.sedmelluq.discord.lavaplayer.filter.FloatPcmAudioFilter;
+
+/**
+ * Measures the integrated loudness of a track while it plays, following ITU-R BS.1770: K-weighted 400ms blocks with
+ * 75% overlap, gated at -70 LUFS and then 10 LU below the ungated mean.
+ * <p>
+ * Block loudness is kept in a histogram of 0.1 LU bins rather than a list, so memory doesn't grow with track length.
+ * The meter outlives the filters feeding it, so the measurement carries on when the filter chain is rebuilt.
+ */
+public class LoudnessMeter {
+    public static final int SAMPLE_RATE = 48000;
+    private static final int SUB_BLOCK = SAMPLE_RATE / 10;
+    private static final int SUB_BLOCKS_PER_BLOCK = 4;
+    private static final double MIN_LOUDNESS = -70;
+    private static final double BIN_WIDTH = 0.1;
+    private static final int BINS = 750;
+    private static final double RELATIVE_GATE = -10;
+
+    // K-weighting at 48kHz: a high shelf followed by a high pass.
+    private static final double SHELF_B0 = 1.53512485958697, SHELF_B1 = -2.69169618940638, SHELF_B2 = 1.19839281085285;
+    private static final double SHELF_A1 = -1.69065929318241, SHELF_A2 = 0.73248077421585;
+    private static final double HIGHPASS_B0 = 1.0, HIGHPASS_B1 = -2.0, HIGHPASS_B2 = 1.0;
+    private static final double HIGHPASS_A1 = -1.99004745483398, HIGHPASS_A2 = 0.99007225036621;
+
+    private final int[] histogram = new int[BINS];
+    private final double[] subBlocks = new double[SUB_BLOCKS_PER_BLOCK];
+    // Per channel: shelf x1, x2, y1, y2, then high pass x1, x2, y1, y2.
+    private double[][] state;
+    private int subBlockIndex = 0;
+    private int subBlockCount = 0;
+    private double currentSum = 0;
+    private int currentSamples = 0;
+    private long measuredSamples = 0;
+
+    public FloatPcmAudioFilter filter(int channels, FloatPcmAudioFilter next) {
+        return new MeterFilter(channels, next);
+    }
+
+    public synchronized long getMeasuredMillis() {
+        return measuredSamples * 1000 / SAMPLE_RATE;
+    }
+
+    /**
+     * @return the integrated loudness in LUFS, or NaN if nothing above the absolute gate was measured
+     */
+    public synchronized double getIntegratedLoudness() {
+        double ungated = gatedLoudness(0);
+        if (Double.isNaN(ungated))
+            return ungated;
+        int firstBin = (int) Math.max(0, Math.ceil((ungated + RELATIVE_GATE - MIN_LOUDNESS) / BIN_WIDTH));
+        return gatedLoudness(firstBin);
+    }
+
+    private synchronized void process(float[][] input, int offset, int length, int channels) {
+        if (state == null || state.length != channels)
+            state = new double[channels][8];
+        for (int i = offset; i < offset + length; i++) {
+            double sum = 0;
+            for (int c = 0; c < channels; c++) {
+                double[] s = state[c];
+                double x = input[c][i];
+                double y = SHELF_B0 * x + SHELF_B1 * s[0] + SHELF_B2 * s[1] - SHELF_A1 * s[2] - SHELF_A2 * s[3];
+                s[1] = s[0];
+                s[0] = x;
+                s[3] = s[2];
+                s[2] = y;
+                double z = HIGHPASS_B0 * y + HIGHPASS_B1 * s[4] + HIGHPASS_B2 * s[5] - HIGHPASS_A1 * s[6]
+                        - HIGHPASS_A2 * s[7];
+                s[5] = s[4];
+                s[4] = y;
+                s[7] = s[6];
+                s[6] = z;
+                sum += z * z;
+            }
+            currentSum += sum;
+            if (++currentSamples == SUB_BLOCK)
+                endSubBlock();
+        }
+        measuredSamples += length;
+    }
+
+    private void endSubBlock() {
+        subBlocks[subBlockIndex] = currentSum / SUB_BLOCK;
+        subBlockIndex = (subBlockIndex + 1) % SUB_BLOCKS_PER_BLOCK;
+        currentSum = 0;
+        currentSamples = 0;
+        if (++subBlockCount < SUB_BLOCKS_PER_BLOCK)
+            return;
+
+        double power = 0;
+        for (double subBlock : subBlocks)
+            power += subBlock;
+        double loudness = loudness(power / SUB_BLOCKS_PER_BLOCK);
+        if (loudness >= MIN_LOUDNESS)
+            histogram[Math.min(BINS - 1, (int) ((loudness - MIN_LOUDNESS) / BIN_WIDTH))]++;
+    }
+
+    /**
+     * Blocks shouldn't span a seek, so start collecting them over again.
+     */
+    private synchronized void onSeek() {
+        subBlockCount = 0;
+        currentSum = 0;
+        currentSamples = 0;
+        state = null;
+    }
+
+    private double gatedLoudness(int firstBin) {
+        double power = 0;
+        long count = 0;
+        for (int i = firstBin; i < BINS; i++) {
+            if (histogram[i] != 0) {
+                power += histogram[i] * power(MIN_LOUDNESS + (i + 0.5) * BIN_WIDTH);
+                count += histogram[i];
+            }
+        }
+        return count == 0 ? Double.NaN : loudness(power / count);
+    }
+
+    private static double loudness(double power) {
+        return -0.691 + 10 * Math.log10(power);
+    }
+
+    private static double power(double loudness) {
+        return Math.pow(10, (loudness + 0.691) / 10);
+    }
+
+    /**
+     * Passes audio on unchanged while feeding it to the meter.
+     */
+    private class MeterFilter implements FloatPcmAudioFilter {
+        private final int channels;
+        private final FloatPcmAudioFilter next;
+
+        private MeterFilter(int channels, FloatPcmAudioFilter next) {
+            this.channels = channels;
+            this.next = next;
+        }
+
+        @Override
+        public void process(float[][] input, int offset, int length) throws InterruptedException {
+            LoudnessMeter.this.process(input, offset, length, channels);
+            next.process(input, offset, length);
+        }
+
+        @Override
+        public void seekPerformed(long requestedTime, long providedTime) {
+            onSeek();
+            next.seekPerformed(requestedTime, providedTime);
+        }
+
+        @Override
+        public void flush() throws InterruptedException {
+            next.flush();
+        }
+
+        @Override
+        public void close() {
+            next.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.jagrosh.jmusicbot.audio.filter;
+
+/**
+ * Loudness normalization for one play of a track: either measuring it for the first time, or applying the gain
+ * worked out from an earlier measurement.
+ */
+public class Normalization {
+    private final String key;
+    private final LoudnessMeter meter;
+    private final float gain;
+
+    private Normalization(String key, LoudnessMeter meter, float gain) {
+        this.key = key;
+        this.meter = meter;
+        this.gain = gain;
+    }
+
+    public static Normalization measure(String key) {
+        return new Normalization(key, new LoudnessMeter(), 1f);
+    }
+
+    public static Normalization gain(String key, float gain) {
+        return new Normalization(key, null, gain);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the meter measuring the track, or null if it was measured before
+     */
+    public LoudnessMeter getMeter() {
+        return meter;
+    }
+
+    public float getGain() {
+        return gain;
+    }
+}
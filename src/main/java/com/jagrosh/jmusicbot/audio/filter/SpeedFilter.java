@@ -0,0 +1,68 @@
+package com.jagrosh.jmusicbot.audio.filter;
+
+import com.sedmelluq.discord.lavaplayer.filter.FloatPcmAudioFilter;
+
+/**
+ * Changes the playback speed by resampling with linear interpolation, so the pitch changes along with it like
+ * nightcore. The output buffers are reused, and only grow if lavaplayer passes in a larger chunk than before.
+ */
+public class SpeedFilter implements FloatPcmAudioFilter {
+    private final FloatPcmAudioFilter next;
+    private final double rate;
+    private final float[] last;
+    private float[][] output;
+    // Read position relative to the start of the next chunk, -1 being the last sample of the previous one.
+    private double position = -1;
+
+    public SpeedFilter(int channels, FloatPcmAudioFilter next, double rate) {
+        this.next = next;
+        this.rate = rate;
+        this.last = new float[channels];
+        this.output = new float[channels][1024];
+    }
+
+    @Override
+    public void process(float[][] input, int offset, int length) throws InterruptedException {
+        int capacity = (int) Math.ceil(length / rate) + 1;
+        if (output[0].length < capacity)
+            output = new float[last.length][capacity];
+
+        int produced = 0;
+        double p = position;
+        while (p < length - 1) {
+            int index = (int) Math.floor(p);
+            float fraction = (float) (p - index);
+            for (int c = 0; c < last.length; c++) {
+                float a = index < 0 ? last[c] : input[c][offset + index];
+                float b = input[c][offset + index + 1];
+                output[c][produced] = a + (b - a) * fraction;
+            }
+            produced++;
+            p += rate;
+        }
+        position = p - length;
+        for (int c = 0; c < last.length; c++)
+            last[c] = input[c][offset + length - 1];
+
+        if (produced > 0)
+            next.process(output, 0, produced);
+    }
+
+    @Override
+    public void seekPerformed(long requestedTime, long providedTime) {
+        position = -1;
+        for (int c = 0; c < last.length; c++)
+            last[c] = 0f;
+        next.seekPerformed(requestedTime, providedTime);
+    }
+
+    @Override
+    public void flush() throws InterruptedException {
+        next.flush();
+    }
+
+    @Override
+    public void close() {
+        next.close();
+    }
+}
@@ -0,0 +1,153 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Memory mappings of local files, shared between everything reading the same file at once.
+ * <p>
+ * Mappings that nothing is reading are kept around for the next play, until the total mapped size goes over the
+ * budget. Then the least recently used idle mappings are unmapped.
+ */
+public class FileMappings {
+    // A single MappedByteBuffer can't be larger than 2GB, so large files are mapped in segments.
+    static final int SEGMENT_BITS = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ignore) {
+            // Older JVMs, mappings are released by the garbage collector instead.
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final long budget;
+    private final LinkedHashMap<Path, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes = 0;
+
+    public FileMappings(long budget) {
+        this.budget = budget;
+    }
+
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    /**
+     * Maps the file, or reuses the existing mapping of it. Every call must be followed by a {@link #release}.
+     */
+    public synchronized Mapping acquire(Path path) throws IOException {
+        path = path.toAbsolutePath().normalize();
+        Mapping mapping = mappings.get(path);
+        if (mapping != null && mapping.lastModified != Files.getLastModifiedTime(path).toMillis()) {
+            // The file changed, anyone still reading the old mapping keeps it until they're done.
+            detach(mapping);
+            mapping = null;
+        }
+        if (mapping == null) {
+            mapping = new Mapping(path);
+            mappings.put(path, mapping);
+            mappedBytes += mapping.size;
+        }
+        mapping.references++;
+        trim();
+        return mapping;
+    }
+
+    public synchronized void release(Mapping mapping) {
+        mapping.references--;
+        if (mapping.references == 0 && mappings.get(mapping.path) != mapping)
+            mapping.unmap();
+        trim();
+    }
+
+    private void detach(Mapping mapping) {
+        mappings.remove(mapping.path);
+        mappedBytes -= mapping.size;
+        if (mapping.references == 0)
+            mapping.unmap();
+    }
+
+    private void trim() {
+        Iterator<Mapping> it = mappings.values().iterator();
+        while (mappedBytes > budget && it.hasNext()) {
+            Mapping mapping = it.next();
+            if (mapping.references == 0) {
+                it.remove();
+                mappedBytes -= mapping.size;
+                mapping.unmap();
+            }
+        }
+    }
+
+    /**
+     * A mapped file. Only {@link FileMappings} changes the reference count.
+     */
+    public static class Mapping {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+        private final MappedByteBuffer[] segments;
+        private int references = 0;
+
+        private Mapping(Path path) throws IOException {
+            this.path = path;
+            this.lastModified = Files.getLastModifiedTime(path).toMillis();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                this.size = channel.size();
+                this.segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+                for (int i = 0; i < segments.length; i++) {
+                    long start = (long) i << SEGMENT_BITS;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+                }
+            }
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return independent views of the segments, for a single reader to move around in
+         */
+        ByteBuffer[] views() {
+            ByteBuffer[] views = new ByteBuffer[segments.length];
+            for (int i = 0; i < segments.length; i++)
+                views[i] = segments[i].duplicate();
+            return views;
+        }
+
+        private void unmap() {
+            if (INVOKE_CLEANER == null)
+                return;
+            for (MappedByteBuffer segment : segments) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, segment);
+                } catch (ReflectiveOperationException | RuntimeException ignore) {
+                    // Left to the garbage collector.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import com.sedmelluq.discord.lavaplayer.filter.AudioPipeline;
+import com.sedmelluq.discord.lavaplayer.filter.AudioPipelineFactory;
+import com.sedmelluq.discord.lavaplayer.filter.PcmFormat;
+import com.sedmelluq.discord.lavaplayer.natives.mp3.Mp3Decoder;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BaseAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+/**
+ * Decodes an MP3 file frame by frame from its {@link Mp3SeekIndex}, so a seek goes straight to the frame playing at
+ * the requested time.
+ */
+public class IndexedMp3AudioTrack extends BaseAudioTrack {
+    // A frame's audio data can start this many bytes back in the frames before it (the largest main_data_begin).
+    private static final int MAX_RESERVOIR = 511;
+    // The header and the longest side information of a frame, which don't count towards the reservoir.
+    private static final int FRAME_OVERHEAD = 4 + 32;
+
+    private final SeekableInputStream inputStream;
+    private final Mp3SeekIndex index;
+
+    private final byte[] frameBuffer = new byte[Mp3Decoder.getMaximumFrameSize()];
+    private final ByteBuffer inputBuffer = ByteBuffer.allocateDirect(Mp3Decoder.getMaximumFrameSize());
+    private final ShortBuffer outputBuffer = ByteBuffer.allocateDirect((int) Mp3Decoder.MPEG1_SAMPLES_PER_FRAME * 4)
+            .order(ByteOrder.nativeOrder()).asShortBuffer();
+    private int nextFrame = 0;
+    // Frames decoded after a seek only to fill the decoder's bit reservoir, their output isn't played.
+    private int framesToSkip = 0;
+
+    public IndexedMp3AudioTrack(AudioTrackInfo trackInfo, SeekableInputStream inputStream, Mp3SeekIndex index) {
+        super(trackInfo);
+        this.inputStream = inputStream;
+        this.index = index;
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor localExecutor) throws Exception {
+        AudioPipeline downstream = AudioPipelineFactory.create(localExecutor.getProcessingContext(),
+                new PcmFormat(index.getChannelCount(), index.getSampleRate()));
+        Mp3Decoder decoder = new Mp3Decoder();
+        try {
+            localExecutor.executeProcessingLoop(() -> provideFrames(decoder, downstream),
+                    timecode -> seek(timecode, downstream));
+        } finally {
+            decoder.close();
+            downstream.close();
+        }
+    }
+
+    private void provideFrames(Mp3Decoder decoder, AudioPipeline downstream) throws InterruptedException {
+        try {
+            while (nextFrame < index.getFrameCount()) {
+                int size = Math.min(index.getFrameSize(nextFrame), frameBuffer.length);
+                inputStream.seek(index.getFrameOffset(nextFrame));
+                if (readFully(size) < size)
+                    break;
+                nextFrame++;
+
+                inputBuffer.clear();
+                inputBuffer.put(frameBuffer, 0, size);
+                inputBuffer.flip();
+                outputBuffer.clear();
+                outputBuffer.limit(index.getChannelCount() * index.getSamplesPerFrame());
+                int produced = decoder.decode(inputBuffer, outputBuffer);
+                if (framesToSkip > 0)
+                    framesToSkip--;
+                else if (produced > 0)
+                    downstream.process(outputBuffer);
+            }
+        } catch (IOException e) {
+            throw new FriendlyException("Stream broke when reading MP3 data.", FriendlyException.Severity.SUSPICIOUS, e);
+        }
+    }
+
+    private void seek(long timecode, AudioPipeline downstream) {
+        int frame = index.getFrameAt(timecode);
+        int start = frame;
+        int covered = 0;
+        while (start > 0 && covered < MAX_RESERVOIR)
+            covered += Math.max(0, index.getFrameSize(--start) - FRAME_OVERHEAD);
+        nextFrame = start;
+        framesToSkip = frame - start;
+        downstream.seekPerformed(timecode, index.getTimecode(frame));
+    }
+
+    private int readFully(int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = inputStream.read(frameBuffer, total, length - total);
+            if (read < 0)
+                break;
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,95 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDescriptor;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDetection;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDetectionResult;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerHints;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerRegistry;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.ProbingAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioReference;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+
+/**
+ * Replaces lavaplayer's local source, reading files through shared memory mappings instead of file streams. It uses
+ * the same source name, so tracks and playlists referring to local files are unaffected.
+ */
+public class MappedLocalAudioSourceManager extends ProbingAudioSourceManager {
+    private final FileMappings mappings;
+    private final SeekIndexStore seekIndexes;
+
+    public MappedLocalAudioSourceManager(FileMappings mappings, SeekIndexStore seekIndexes) {
+        super(MediaContainerRegistry.DEFAULT_REGISTRY);
+        this.mappings = mappings;
+        this.seekIndexes = seekIndexes;
+    }
+
+    @Override
+    public String getSourceName() {
+        return "local";
+    }
+
+    @Override
+    public AudioItem loadItem(DefaultAudioPlayerManager manager, AudioReference reference) {
+        File file = new File(reference.identifier);
+        if (file.exists() && file.isFile() && file.canRead())
+            return handleLoadResult(detectContainerForFile(reference, file));
+        return null;
+    }
+
+    public MappedSeekableInputStream open(File file) throws IOException {
+        return new MappedSeekableInputStream(mappings, mappings.acquire(file.toPath()));
+    }
+
+    /**
+     * @return the seek index of an MP3 file, or null if it couldn't be built
+     */
+    public Mp3SeekIndex getSeekIndex(File file, MappedSeekableInputStream inputStream) {
+        return seekIndexes.get(file, inputStream);
+    }
+
+    private MediaContainerDetectionResult detectContainerForFile(AudioReference reference, File file) {
+        try (MappedSeekableInputStream inputStream = open(file)) {
+            int lastDotIndex = file.getName().lastIndexOf('.');
+            String fileExtension = lastDotIndex >= 0 ? file.getName().substring(lastDotIndex + 1) : null;
+            return new MediaContainerDetection(containerRegistry, reference, inputStream,
+                    MediaContainerHints.from(null, fileExtension)).detectContainer();
+        } catch (IOException e) {
+            throw new FriendlyException("Failed to open file for reading.", FriendlyException.Severity.SUSPICIOUS, e);
+        }
+    }
+
+    @Override
+    protected AudioTrack createTrack(AudioTrackInfo trackInfo, MediaContainerDescriptor containerTrackFactory) {
+        return new MappedLocalAudioTrack(trackInfo, containerTrackFactory, this);
+    }
+
+    @Override
+    public boolean isTrackEncodable(AudioTrack track) {
+        return true;
+    }
+
+    @Override
+    public void encodeTrack(AudioTrack track, DataOutput output) throws IOException {
+        encodeTrackFactory(((MappedLocalAudioTrack) track).getContainerTrackFactory(), output);
+    }
+
+    @Override
+    public AudioTrack decodeTrack(AudioTrackInfo trackInfo, DataInput input) throws IOException {
+        MediaContainerDescriptor containerTrackFactory = decodeTrackFactory(input);
+        return containerTrackFactory == null ? null : new MappedLocalAudioTrack(trackInfo, containerTrackFactory, this);
+    }
+
+    @Override
+    public void shutdown() {
+        // Nothing to shut down
+    }
+}
@@ -0,0 +1,59 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.io.File;
+
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDescriptor;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.DelegatedAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+/**
+ * A local file played from its memory mapping, with the container detected when it was loaded.
+ */
+public class MappedLocalAudioTrack extends DelegatedAudioTrack {
+    private final File file;
+    private final MediaContainerDescriptor containerTrackFactory;
+    private final MappedLocalAudioSourceManager sourceManager;
+
+    public MappedLocalAudioTrack(AudioTrackInfo trackInfo, MediaContainerDescriptor containerTrackFactory,
+            MappedLocalAudioSourceManager sourceManager) {
+        super(trackInfo);
+        this.file = new File(trackInfo.identifier);
+        this.containerTrackFactory = containerTrackFactory;
+        this.sourceManager = sourceManager;
+    }
+
+    public MediaContainerDescriptor getContainerTrackFactory() {
+        return containerTrackFactory;
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor localExecutor) throws Exception {
+        try (MappedSeekableInputStream inputStream = sourceManager.open(file)) {
+            Mp3SeekIndex index = "mp3".equals(containerTrackFactory.probe.getName())
+                    ? sourceManager.getSeekIndex(file, inputStream) : null;
+            InternalAudioTrack track;
+            if (index != null)
+                track = new IndexedMp3AudioTrack(trackInfo, inputStream, index);
+            else {
+                // Building the index may have read into the file before giving up.
+                inputStream.seek(0);
+                track = (InternalAudioTrack) containerTrackFactory.createTrack(trackInfo, inputStream);
+            }
+            processDelegate(track, localExecutor);
+        }
+    }
+
+    @Override
+    protected AudioTrack makeShallowClone() {
+        return new MappedLocalAudioTrack(trackInfo, containerTrackFactory, sourceManager);
+    }
+
+    @Override
+    public AudioSourceManager getSourceManager() {
+        return sourceManager;
+    }
+}
@@ -0,0 +1,96 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+import com.sedmelluq.discord.lavaplayer.track.info.AudioTrackInfoProvider;
+
+/**
+ * Reads a local file from its memory mapping. Seeking only moves the position, and reads copy straight from the
+ * mapping without going through the file system.
+ */
+public class MappedSeekableInputStream extends SeekableInputStream {
+    private static final long SEGMENT_MASK = FileMappings.SEGMENT_SIZE - 1;
+
+    private final FileMappings mappings;
+    private final FileMappings.Mapping mapping;
+    private final ByteBuffer[] views;
+    private long position = 0;
+    private boolean closed = false;
+
+    public MappedSeekableInputStream(FileMappings mappings, FileMappings.Mapping mapping) {
+        super(mapping.getSize(), 0);
+        this.mappings = mappings;
+        this.mapping = mapping;
+        this.views = mapping.views();
+    }
+
+    @Override
+    public int read() {
+        if (position >= contentLength)
+            return -1;
+        int value = views[(int) (position >>> FileMappings.SEGMENT_BITS)].get((int) (position & SEGMENT_MASK)) & 0xFF;
+        position++;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0)
+            return 0;
+        if (position >= contentLength)
+            return -1;
+        int total = 0;
+        while (total < len && position < contentLength) {
+            ByteBuffer view = views[(int) (position >>> FileMappings.SEGMENT_BITS)];
+            view.position((int) (position & SEGMENT_MASK));
+            int length = Math.min(len - total, view.remaining());
+            view.get(b, off + total, length);
+            total += length;
+            position += length;
+        }
+        return total;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, contentLength - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, contentLength - position);
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    protected void seekHard(long position) {
+        this.position = Math.min(position, contentLength);
+    }
+
+    @Override
+    public boolean canSeekHard() {
+        return true;
+    }
+
+    @Override
+    public List<AudioTrackInfoProvider> getTrackInfoProviders() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            mappings.release(mapping);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.sedmelluq.discord.lavaplayer.natives.mp3.Mp3Decoder;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+
+/**
+ * The byte offset of every audio frame in an MP3 file. Every frame of a file holds the same amount of samples, so the
+ * frame playing at any time is found directly, where lavaplayer has to estimate it from the bitrate or the 100 entry
+ * table in the Xing header, which is off by up to a minute in a long mix.
+ */
+public class Mp3SeekIndex {
+    // Enough to see the Xing or Info tag of the first frame, which follows the side info of the frame.
+    private static final int PEEK_SIZE = 64;
+    private static final int[] TAG_OFFSETS = { 13, 21, 36 };
+
+    private final int sampleRate;
+    private final int channelCount;
+    private final int samplesPerFrame;
+    // The offset of each frame, followed by the offset where the last one ends.
+    private final int[] offsets;
+
+    private Mp3SeekIndex(int sampleRate, int channelCount, int samplesPerFrame, int[] offsets) {
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.samplesPerFrame = samplesPerFrame;
+        this.offsets = offsets;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    public int getFrameCount() {
+        return offsets.length - 1;
+    }
+
+    public long getFrameOffset(int frame) {
+        return offsets[frame];
+    }
+
+    public int getFrameSize(int frame) {
+        return offsets[frame + 1] - offsets[frame];
+    }
+
+    /**
+     * @return the frame that is playing at the given time
+     */
+    public int getFrameAt(long timecode) {
+        long frame = timecode * sampleRate / 1000 / samplesPerFrame;
+        return (int) Math.max(0, Math.min(getFrameCount(), frame));
+    }
+
+    public long getTimecode(int frame) {
+        return (long) frame * samplesPerFrame * 1000 / sampleRate;
+    }
+
+    /**
+     * Scans the frame headers of a file.
+     *
+     * @return the index, or null if the file doesn't contain MP3 frames this can index
+     */
+    public static Mp3SeekIndex build(SeekableInputStream stream) throws IOException {
+        long length = stream.getContentLength();
+        if (length >= Integer.MAX_VALUE)
+            return null;
+        byte[] header = new byte[PEEK_SIZE];
+        long position = findFrame(stream, skipId3Tag(stream, header), length, header);
+        if (position < 0)
+            return null;
+
+        int sampleRate = Mp3Decoder.getFrameSampleRate(header, 0);
+        int channelCount = Mp3Decoder.getFrameChannelCount(header, 0);
+        int samplesPerFrame = (int) Mp3Decoder.getSamplesPerFrame(header, 0);
+        // The Xing or Info frame only describes the file, lavaplayer doesn't play it either.
+        for (int offset : TAG_OFFSETS) {
+            String tag = new String(header, offset, 4, StandardCharsets.ISO_8859_1);
+            if (tag.equals("Xing") || tag.equals("Info")) {
+                position += Mp3Decoder.getFrameSize(header, 0);
+                break;
+            }
+        }
+
+        int[] offsets = new int[1024];
+        int count = 0;
+        long end = 0;
+        while (position >= 0 && position + Mp3Decoder.HEADER_SIZE <= length) {
+            if (!readHeader(stream, position, header) || Mp3Decoder.getFrameSampleRate(header, 0) != sampleRate) {
+                // Skip over garbage and tags between frames.
+                position = findFrame(stream, position + 1, length, header);
+                continue;
+            }
+            int size = Mp3Decoder.getFrameSize(header, 0);
+            if (position + size > length)
+                break;
+            if (count + 1 >= offsets.length)
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            offsets[count++] = (int) position;
+            position += size;
+            end = position;
+        }
+        if (count == 0)
+            return null;
+        offsets[count] = (int) end;
+        return new Mp3SeekIndex(sampleRate, channelCount, samplesPerFrame, Arrays.copyOf(offsets, count + 1));
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(sampleRate);
+        output.writeInt(channelCount);
+        output.writeInt(samplesPerFrame);
+        output.writeInt(offsets.length);
+        for (int offset : offsets)
+            output.writeInt(offset);
+    }
+
+    public static Mp3SeekIndex read(DataInput input) throws IOException {
+        int sampleRate = input.readInt();
+        int channelCount = input.readInt();
+        int samplesPerFrame = input.readInt();
+        int[] offsets = new int[input.readInt()];
+        for (int i = 0; i < offsets.length; i++)
+            offsets[i] = input.readInt();
+        return new Mp3SeekIndex(sampleRate, channelCount, samplesPerFrame, offsets);
+    }
+
+    /**
+     * @return the offset after the ID3v2 tag at the start of the file, if there is one
+     */
+    private static long skipId3Tag(SeekableInputStream stream, byte[] buffer) throws IOException {
+        stream.seek(0);
+        if (readFully(stream, buffer, 10) < 10 || buffer[0] != 'I' || buffer[1] != 'D' || buffer[2] != '3')
+            return 0;
+        int size = (buffer[6] & 0x7F) << 21 | (buffer[7] & 0x7F) << 14 | (buffer[8] & 0x7F) << 7 | (buffer[9] & 0x7F);
+        return 10 + size;
+    }
+
+    /**
+     * Finds the next frame which is directly followed by another one, or by the end of the file.
+     *
+     * @return its offset with its header in the buffer, or -1 if there are no more frames
+     */
+    private static long findFrame(SeekableInputStream stream, long from, long length, byte[] header)
+            throws IOException {
+        byte[] next = new byte[Mp3Decoder.HEADER_SIZE];
+        for (long position = from; position + Mp3Decoder.HEADER_SIZE <= length; position++) {
+            if (!readHeader(stream, position, header))
+                continue;
+            long nextPosition = position + Mp3Decoder.getFrameSize(header, 0);
+            if (nextPosition + Mp3Decoder.HEADER_SIZE > length
+                    || readHeader(stream, nextPosition, next)
+                            && Mp3Decoder.getFrameSampleRate(next, 0) == Mp3Decoder.getFrameSampleRate(header, 0))
+                return position;
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether a valid frame header was read
+     */
+    private static boolean readHeader(SeekableInputStream stream, long position, byte[] header) throws IOException {
+        stream.seek(position);
+        if (readFully(stream, header, Math.min(header.length, (int) (stream.getContentLength() - position)))
+                < Mp3Decoder.HEADER_SIZE)
+            return false;
+        try {
+            return Mp3Decoder.hasFrameSync(header, 0) && !Mp3Decoder.isUnsupportedVersion(header, 0)
+                    && Mp3Decoder.getFrameSampleRate(header, 0) > 0
+                    && Mp3Decoder.getFrameSize(header, 0) > Mp3Decoder.HEADER_SIZE;
+        } catch (RuntimeException e) {
+            // Reserved bitrate or sample rate values.
+            return false;
+        }
+    }
+
+    private static int readFully(SeekableInputStream stream, byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = stream.read(buffer, total, length - total);
+            if (read < 0)
+                break;
+            total += read;
+        }
+        return total;
+    }
+}
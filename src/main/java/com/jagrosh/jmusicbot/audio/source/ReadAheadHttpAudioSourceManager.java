@@ -0,0 +1,57 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDescriptor;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerRegistry;
+import com.sedmelluq.discord.lavaplayer.source.http.HttpAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+
+/**
+ * Replaces lavaplayer's HTTP source, playing tracks through a {@link ReadAheadHttpStream}. Loading is unchanged and
+ * all streams share the source's connection pool. It uses the same source name, so saved tracks are unaffected.
+ */
+public class ReadAheadHttpAudioSourceManager extends HttpAudioSourceManager {
+    public static final String RECONNECTS = "http.reconnects";
+    public static final String FAILURES = "http.failures";
+
+    private final int bufferSize;
+    private final Counter reconnects;
+    private final Counter failures;
+    private final ExecutorService readers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "http-read-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReadAheadHttpAudioSourceManager(MediaContainerRegistry containerRegistry, int bufferSize,
+            MetricsRegistry metrics) {
+        super(containerRegistry);
+        this.bufferSize = bufferSize;
+        this.reconnects = metrics.counter(RECONNECTS);
+        this.failures = metrics.counter(FAILURES);
+    }
+
+    public ReadAheadHttpStream open(HttpInterface httpInterface, URI uri, boolean stream) {
+        return new ReadAheadHttpStream(httpInterface, uri, stream, bufferSize, readers, reconnects, failures);
+    }
+
+    @Override
+    protected AudioTrack createTrack(AudioTrackInfo trackInfo, MediaContainerDescriptor containerTrackFactory) {
+        return new ReadAheadHttpAudioTrack(trackInfo, containerTrackFactory, this);
+    }
+
+    @Override
+    public AudioTrack decodeTrack(AudioTrackInfo trackInfo, DataInput input) throws IOException {
+        MediaContainerDescriptor containerTrackFactory = decodeTrackFactory(input);
+        return containerTrackFactory == null ? null : new ReadAheadHttpAudioTrack(trackInfo, containerTrackFactory, this);
+    }
+}
@@ -0,0 +1,40 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.net.URI;
+
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDescriptor;
+import com.sedmelluq.discord.lavaplayer.source.http.HttpAudioTrack;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.InternalAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+/**
+ * A track played from an HTTP link through a {@link ReadAheadHttpStream}.
+ */
+public class ReadAheadHttpAudioTrack extends HttpAudioTrack {
+    private final ReadAheadHttpAudioSourceManager sourceManager;
+
+    public ReadAheadHttpAudioTrack(AudioTrackInfo trackInfo, MediaContainerDescriptor containerTrackFactory,
+            ReadAheadHttpAudioSourceManager sourceManager) {
+        super(trackInfo, containerTrackFactory, sourceManager);
+        this.sourceManager = sourceManager;
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor localExecutor) throws Exception {
+        try (HttpInterface httpInterface = sourceManager.getHttpInterface();
+                ReadAheadHttpStream inputStream = sourceManager.open(httpInterface, new URI(trackInfo.identifier),
+                        trackInfo.isStream)) {
+            inputStream.start();
+            processDelegate((InternalAudioTrack) getContainerTrackFactory().createTrack(trackInfo, inputStream),
+                    localExecutor);
+        }
+    }
+
+    @Override
+    protected AudioTrack makeShallowClone() {
+        return new ReadAheadHttpAudioTrack(trackInfo, getContainerTrackFactory(), sourceManager);
+    }
+}
@@ -0,0 +1,351 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.metrics.Counter;
+import com.sedmelluq.discord.lavaplayer.tools.Units;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+import com.sedmelluq.discord.lavaplayer.track.info.AudioTrackInfoProvider;
+
+/**
+ * An HTTP stream that is downloaded into a ring buffer on a separate thread, so playback only waits for the network
+ * when the buffer runs dry. When the connection drops, a live stream is reopened at the live position, as radio
+ * streams don't support ranges. Anything else is reopened where it left off, with a range request if the server
+ * supports them or else by skipping what was already read. A file without a known length ends at the end of its
+ * response, since there is no telling whether it was cut short.
+ * <p>
+ * lavaplayer also marks files as streams when it can't tell their duration, so a stream only counts as live when the
+ * server answers like an Icecast or SHOUTcast radio. Reopening anything else at its end would play it again.
+ */
+public class ReadAheadHttpStream extends SeekableInputStream {
+    private static final Logger LOG = LoggerFactory.getLogger("ReadAheadHttpStream");
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_RETRIES = 5;
+    private static final long RETRY_DELAY = 500;
+
+    private final HttpInterface httpInterface;
+    private final URI uri;
+    private final boolean stream;
+    private final Executor readers;
+    private final Counter reconnects;
+    private final Counter failures;
+    private final byte[] buffer;
+    private boolean rangeSupported = false;
+    private boolean live = false;
+
+    // The stream offsets of the next byte playback reads and of the next byte downloaded. The buffer holds the bytes
+    // in between, each at its offset modulo the buffer size.
+    private long position = 0;
+    private long filled = 0;
+    // Bumped on every hard seek, so the download thread drops its connection and data.
+    private int generation = 0;
+    private CloseableHttpResponse response;
+    private boolean downloading = false;
+    private boolean finished = false;
+    private boolean closed = false;
+    private IOException error;
+
+    public ReadAheadHttpStream(HttpInterface httpInterface, URI uri, boolean stream, int bufferSize, Executor readers,
+            Counter reconnects, Counter failures) {
+        super(Units.CONTENT_LENGTH_UNKNOWN, 0);
+        this.httpInterface = httpInterface;
+        this.uri = uri;
+        this.stream = stream;
+        this.readers = readers;
+        this.reconnects = reconnects;
+        this.failures = failures;
+        this.buffer = new byte[Math.max(CHUNK_SIZE, bufferSize)];
+    }
+
+    /**
+     * Opens the connection and starts reading ahead. The first connection is made on the calling thread, so the
+     * content length is known and a failure is reported to the caller.
+     */
+    public void start() throws IOException {
+        InputStream content = connect(0);
+        synchronized (this) {
+            long length = response.getEntity().getContentLength();
+            Header ranges = response.getFirstHeader("Accept-Ranges");
+            contentLength = length >= 0 ? length : Units.CONTENT_LENGTH_UNKNOWN;
+            rangeSupported = length >= 0 && ranges != null && "bytes".equals(ranges.getValue());
+            live = stream && length < 0 && isRadio(response);
+            downloading = true;
+            int current = generation;
+            readers.execute(() -> download(content, current));
+        }
+    }
+
+    @Override
+    public synchronized long getPosition() {
+        return position;
+    }
+
+    @Override
+    public synchronized boolean canSeekHard() {
+        return rangeSupported;
+    }
+
+    @Override
+    protected synchronized void seekHard(long target) throws IOException {
+        if (target >= position && target <= filled) {
+            position = target;
+            notifyAll();
+            return;
+        }
+        position = target;
+        filled = target;
+        finished = false;
+        error = null;
+        generation++;
+        closeResponse();
+        if (!downloading) {
+            downloading = true;
+            int current = generation;
+            readers.execute(() -> download(null, current));
+        }
+        notifyAll();
+    }
+
+    @Override
+    public List<AudioTrackInfoProvider> getTrackInfoProviders() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (!awaitData())
+            return -1;
+        int count = (int) Math.min(length, filled - position);
+        int start = (int) (position % buffer.length);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, bytes, offset, first);
+        System.arraycopy(buffer, 0, bytes, offset + first, count - first);
+        position += count;
+        notifyAll();
+        return count;
+    }
+
+    @Override
+    public synchronized long skip(long count) throws IOException {
+        if (count <= 0 || !awaitData())
+            return 0;
+        long skipped = Math.min(count, filled - position);
+        position += skipped;
+        notifyAll();
+        return skipped;
+    }
+
+    @Override
+    public synchronized int available() {
+        return (int) Math.min(Integer.MAX_VALUE, filled - position);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeResponse();
+        notifyAll();
+    }
+
+    /**
+     * Waits until there is buffered data to read.
+     *
+     * @return false if the stream has ended
+     */
+    private boolean awaitData() throws IOException {
+        try {
+            while (position == filled && !finished && error == null && !closed)
+                wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException().initCause(e);
+        }
+        if (closed)
+            throw new IOException("Stream closed");
+        if (position < filled)
+            return true;
+        if (error != null)
+            throw new IOException("Failed to read " + uri, error);
+        return false;
+    }
+
+    private void download(InputStream content, int current) {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int attempts = 0;
+        while (true) {
+            long offset;
+            int room;
+            synchronized (this) {
+                while (!closed && generation == current && filled - position >= buffer.length)
+                    waitQuietly(0);
+                if (closed) {
+                    downloading = false;
+                    closeResponse();
+                    return;
+                }
+                if (generation != current) {
+                    // A connection opened while the seek happened is stored as the response, but is of no use now.
+                    current = generation;
+                    content = null;
+                    closeResponse();
+                }
+                offset = filled;
+                room = (int) Math.min(chunk.length, buffer.length - (filled - position));
+            }
+
+            IOException failure = null;
+            int read = 0;
+            try {
+                if (content == null)
+                    content = connect(offset);
+                read = content.read(chunk, 0, room);
+                if (read < 0 && isCutShort(offset))
+                    failure = new EOFException("Connection closed at offset " + offset);
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            synchronized (this) {
+                // A seek or close aborted the connection, the next iteration picks that up.
+                if (closed || generation != current)
+                    continue;
+                if (failure != null) {
+                    content = null;
+                    closeResponse();
+                    if (++attempts > MAX_RETRIES) {
+                        LOG.warn("Giving up on " + uri + " after " + MAX_RETRIES + " reconnects", failure);
+                        failures.increment();
+                        error = failure;
+                        downloading = false;
+                        notifyAll();
+                        return;
+                    }
+                    LOG.debug("Reconnecting to " + uri + " at offset " + offset + ": " + failure);
+                    reconnects.increment();
+                    waitQuietly(RETRY_DELAY * attempts);
+                    continue;
+                }
+                if (read < 0) {
+                    finished = true;
+                    downloading = false;
+                    closeResponse();
+                    notifyAll();
+                    return;
+                }
+                int start = (int) (filled % buffer.length);
+                int first = Math.min(read, buffer.length - start);
+                System.arraycopy(chunk, 0, buffer, start, first);
+                System.arraycopy(chunk, first, buffer, 0, read - first);
+                filled += read;
+                attempts = 0;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return whether the stream ending at the given offset means the connection dropped, which is always the case
+     *         for live streams and never for other files without a known length
+     */
+    private synchronized boolean isCutShort(long offset) {
+        if (live)
+            return true;
+        return contentLength != Units.CONTENT_LENGTH_UNKNOWN && offset < contentLength;
+    }
+
+    /**
+     * @return whether the response comes from an internet radio server, which sends icy- or ice- headers
+     */
+    private static boolean isRadio(CloseableHttpResponse response) {
+        for (Header header : response.getAllHeaders()) {
+            String name = header.getName().toLowerCase(Locale.ROOT);
+            if (name.startsWith("icy-") || name.startsWith("ice-"))
+                return true;
+        }
+        Header server = response.getFirstHeader("Server");
+        return server != null && server.getValue().toLowerCase(Locale.ROOT).matches(".*(icecast|shoutcast).*");
+    }
+
+    private InputStream connect(long offset) throws IOException {
+        HttpGet request = new HttpGet(uri);
+        boolean ranged;
+        synchronized (this) {
+            ranged = offset > 0 && rangeSupported;
+        }
+        if (ranged)
+            request.setHeader("Range", "bytes=" + offset + "-");
+        CloseableHttpResponse opened = httpInterface.execute(request);
+        int status = opened.getStatusLine().getStatusCode();
+        if (status != 200 && status != 206) {
+            opened.close();
+            throw new IOException("Unexpected status code " + status + " from " + uri);
+        }
+        synchronized (this) {
+            if (closed) {
+                opened.close();
+                throw new IOException("Stream closed");
+            }
+            response = opened;
+        }
+        InputStream content = opened.getEntity().getContent();
+        // The server ignored the range or doesn't support them, so skip to the offset. A live stream just carries on
+        // from where it is now.
+        if (!live && offset > 0 && status == 200) {
+            long skipped = 0;
+            while (skipped < offset) {
+                long count = content.skip(offset - skipped);
+                if (count <= 0) {
+                    if (content.read() < 0)
+                        throw new EOFException("Stream ended before offset " + offset);
+                    count = 1;
+                }
+                skipped += count;
+            }
+        }
+        return content;
+    }
+
+    private void closeResponse() {
+        if (response == null)
+            return;
+        try {
+            response.close();
+        } catch (IOException e) {
+            // Already broken
+        }
+        response = null;
+    }
+
+    private void waitQuietly(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+}
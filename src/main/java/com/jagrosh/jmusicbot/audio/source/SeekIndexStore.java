@@ -0,0 +1,117 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sedmelluq.discord.lavaplayer.tools.io.SeekableInputStream;
+
+/**
+ * Keeps the seek index of every local MP3 file that has been played in a file of its own, so it is only built once.
+ * The index file is named after the path, size and modification time of the audio file, so an index is rebuilt when
+ * its file changes. The indexes of the last few files played are also kept in memory.
+ */
+public class SeekIndexStore {
+    private static final Logger LOG = LoggerFactory.getLogger("SeekIndexStore");
+
+    private static final int MAGIC = 0x4D503349;
+    private static final String SUFFIX = ".idx";
+    private static final int CACHED_INDEXES = 8;
+
+    private final Path folder;
+    private final LinkedHashMap<String, Mp3SeekIndex> cached = new LinkedHashMap<String, Mp3SeekIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mp3SeekIndex> eldest) {
+            return size() > CACHED_INDEXES;
+        }
+    };
+
+    public SeekIndexStore(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * @param stream the contents of the file, read from when the index has to be built
+     * @return the index of the file, or null if it can't be indexed
+     */
+    public Mp3SeekIndex get(File file, SeekableInputStream stream) {
+        String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        synchronized (this) {
+            Mp3SeekIndex index = cached.get(key);
+            if (index != null)
+                return index;
+        }
+
+        Path path = folder.resolve(fileName(key));
+        Mp3SeekIndex index = read(path, key);
+        if (index == null) {
+            try {
+                index = Mp3SeekIndex.build(stream);
+            } catch (IOException e) {
+                LOG.warn("Failed to index " + file, e);
+            }
+            if (index == null)
+                return null;
+            write(path, key, index);
+        }
+        synchronized (this) {
+            cached.put(key, index);
+        }
+        return index;
+    }
+
+    private static Mp3SeekIndex read(Path path, String key) {
+        if (!Files.exists(path))
+            return null;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC || !input.readUTF().equals(key))
+                return null;
+            return Mp3SeekIndex.read(input);
+        } catch (IOException e) {
+            LOG.warn("Failed to read seek index " + path, e);
+            return null;
+        }
+    }
+
+    private void write(Path path, String key, Mp3SeekIndex index) {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(folder);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                output.writeInt(MAGIC);
+                output.writeUTF(key);
+                index.write(output);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("Failed to write seek index " + path, e);
+        }
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash)
+                sb.append(String.format("%02x", b));
+            return sb.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
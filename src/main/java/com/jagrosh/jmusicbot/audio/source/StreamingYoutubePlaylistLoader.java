@@ -0,0 +1,135 @@
+package com.jagrosh.jmusicbot.audio.source;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import com.sedmelluq.discord.lavaplayer.source.youtube.DefaultYoutubePlaylistLoader;
+import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubePlaylistLoader;
+import com.sedmelluq.discord.lavaplayer.tools.io.HttpInterface;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+
+/**
+ * Loads YouTube playlists with lavaplayer's loader, but lets a load started through {@link #stream} see the tracks as
+ * the pages come in instead of only once the whole playlist is read. Streamed loads read every page, other loads stop
+ * at the configured page count.
+ * <p>
+ * The loader reports tracks one at a time while it reads a page, so they are passed on in batches of a page, with the
+ * first track on its own so it can start playing right away.
+ */
+public class StreamingYoutubePlaylistLoader implements YoutubePlaylistLoader {
+    // As many videos as YouTube puts on a playlist page.
+    private static final int PAGE_SIZE = 100;
+    private static final Pattern PLAYLIST_URL = Pattern.compile(
+            "^(https?://)?(www\\.|m\\.|music\\.)?youtube\\.com/playlist\\?(.*&)?list=[\\w-]+.*$");
+
+    /**
+     * Receives the tracks of a streamed playlist as they are loaded.
+     */
+    public interface Listener {
+        /**
+         * @return whether to keep loading the playlist
+         */
+        boolean tracksLoaded(List<AudioTrack> tracks);
+    }
+
+    private final YoutubePlaylistLoader capped = new DefaultYoutubePlaylistLoader();
+    private final YoutubePlaylistLoader unbounded = new DefaultYoutubePlaylistLoader();
+    private final ThreadLocal<Listener> listener = new ThreadLocal<>();
+
+    public StreamingYoutubePlaylistLoader() {
+        unbounded.setPlaylistPageCount(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return whether the identifier links to a whole YouTube playlist, rather than a video in one
+     */
+    public static boolean isPlaylistUrl(String identifier) {
+        return PLAYLIST_URL.matcher(identifier).matches();
+    }
+
+    /**
+     * Runs a load on this thread, passing the tracks of the playlists it reads to the listener.
+     */
+    public <T> T stream(Listener listener, Supplier<T> load) {
+        this.listener.set(listener);
+        try {
+            return load.get();
+        } finally {
+            this.listener.remove();
+        }
+    }
+
+    @Override
+    public void setPlaylistPageCount(int playlistPageCount) {
+        capped.setPlaylistPageCount(playlistPageCount);
+    }
+
+    @Override
+    public AudioPlaylist load(HttpInterface httpInterface, String playlistId, String selectedVideoId,
+            Function<AudioTrackInfo, AudioTrack> trackFactory) {
+        Listener current = listener.get();
+        if (current == null)
+            return capped.load(httpInterface, playlistId, selectedVideoId, trackFactory);
+
+        Batcher batcher = new Batcher(current, trackFactory);
+        AudioPlaylist playlist;
+        try {
+            playlist = unbounded.load(httpInterface, playlistId, selectedVideoId, batcher);
+        } catch (Stopped e) {
+            return new BasicAudioPlaylist(null, batcher.loaded, null, false);
+        }
+        batcher.flush();
+        return playlist;
+    }
+
+    /**
+     * Creates the tracks for the loader and collects them into batches for the listener.
+     */
+    private static class Batcher implements Function<AudioTrackInfo, AudioTrack> {
+        private final Listener listener;
+        private final Function<AudioTrackInfo, AudioTrack> trackFactory;
+        private final List<AudioTrack> loaded = new ArrayList<>();
+        private List<AudioTrack> batch = new ArrayList<>();
+
+        private Batcher(Listener listener, Function<AudioTrackInfo, AudioTrack> trackFactory) {
+            this.listener = listener;
+            this.trackFactory = trackFactory;
+        }
+
+        @Override
+        public AudioTrack apply(AudioTrackInfo info) {
+            AudioTrack track = trackFactory.apply(info);
+            loaded.add(track);
+            batch.add(track);
+            if ((loaded.size() == 1 || batch.size() == PAGE_SIZE) && !flush())
+                throw new Stopped();
+            return track;
+        }
+
+        /**
+         * @return whether the listener wants more tracks
+         */
+        private boolean flush() {
+            if (batch.isEmpty())
+                return true;
+            List<AudioTrack> tracks = batch;
+            batch = new ArrayList<>();
+            return listener.tracksLoaded(tracks);
+        }
+    }
+
+    /**
+     * Thrown through lavaplayer's loader to stop reading pages once the listener has enough.
+     */
+    private static class Stopped extends RuntimeException {
+        private Stopped() {
+            super(null, null, false, false);
+        }
+    }
+}
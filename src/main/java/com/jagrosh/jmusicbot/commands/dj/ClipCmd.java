@@ -0,0 +1,105 @@
+package com.jagrosh.jmusicbot.commands.dj;
+
+import com.jagrosh.jdautilities.command.CommandEvent;
+import com.jagrosh.jmusicbot.Bot;
+import com.jagrosh.jmusicbot.audio.AudioHandler;
+import com.jagrosh.jmusicbot.audio.FairLoadScheduler;
+import com.jagrosh.jmusicbot.commands.DJCommand;
+import com.jagrosh.jmusicbot.utils.FormatUtil;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import net.dv8tion.jda.api.entities.Message;
+
+/**
+ * Plays a short sound over the music without interrupting it.
+ */
+public class ClipCmd extends DJCommand {
+    private static final long MAX_LENGTH = 30000;
+    // Clips load in their own lane, so they don't wait behind the guild's playlist loads.
+    private static final String CLIP_KEY = "clip";
+
+    private final String loadingEmoji;
+
+    public ClipCmd(Bot bot) {
+        super(bot);
+        this.loadingEmoji = bot.getConfig().getLoading();
+        this.name = "clip";
+        this.arguments = "<URL|stop>";
+        this.help = "plays a short sound over the music";
+        this.aliases = bot.getConfig().getAliases(this.name);
+        this.beListening = true;
+        this.bePlaying = false;
+    }
+
+    @Override
+    public void doCommand(CommandEvent event) {
+        if (event.getArgs().isEmpty() && event.getMessage().getAttachments().isEmpty()) {
+            event.replyWarning("Please include a URL or file, or `stop`!");
+            return;
+        }
+        AudioHandler handler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
+        if (event.getArgs().equalsIgnoreCase("stop")) {
+            if (handler.stopClip())
+                event.replySuccess("Stopped the clip.");
+            else
+                event.replyWarning("No clip is playing!");
+            return;
+        }
+        String args = event.getArgs().startsWith("<") && event.getArgs().endsWith(">")
+                ? event.getArgs().substring(1, event.getArgs().length() - 1)
+                : event.getArgs().isEmpty() ? event.getMessage().getAttachments().get(0).getUrl() : event.getArgs();
+        event.reply(loadingEmoji + " Loading clip... `[" + args + "]`", m -> bot.getPlayerManager().loadItemOrdered(
+                FairLoadScheduler.key(event.getGuild().getIdLong(), CLIP_KEY), args, new ResultHandler(m, event)));
+    }
+
+    private class ResultHandler implements AudioLoadResultHandler {
+        private final Message m;
+        private final CommandEvent event;
+
+        private ResultHandler(Message m, CommandEvent event) {
+            this.m = m;
+            this.event = event;
+        }
+
+        private void playClip(AudioTrack track) {
+            if (track.getInfo().isStream || track.getDuration() > MAX_LENGTH) {
+                m.editMessage(FormatUtil.filter(event.getClient().getWarning() + " Clips can be at most `"
+                        + FormatUtil.formatTime(MAX_LENGTH) + "` long!")).queue();
+                return;
+            }
+            AudioHandler handler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
+            handler.playClip(track);
+            m.editMessage(FormatUtil.filter(event.getClient().getSuccess() + " Playing clip **" + track.getInfo().title
+                    + "** (`" + FormatUtil.formatTime(track.getDuration()) + "`)")).queue();
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack track) {
+            playClip(track);
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist playlist) {
+            if (playlist.getTracks().isEmpty()) {
+                noMatches();
+                return;
+            }
+            playClip(playlist.getSelectedTrack() == null ? playlist.getTracks().get(0) : playlist.getSelectedTrack());
+        }
+
+        @Override
+        public void noMatches() {
+            m.editMessage(FormatUtil.filter(event.getClient().getWarning() + " No clip found at `" + event.getArgs() + "`.")).queue();
+        }
+
+        @Override
+        public void loadFailed(FriendlyException throwable) {
+            if (throwable.severity == FriendlyException.Severity.COMMON)
+                m.editMessage(event.getClient().getError() + " Error loading: " + throwable.getMessage()).queue();
+            else
+                m.editMessage(event.getClient().getError() + " Error loading clip.").queue();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.jagrosh.jmusicbot.commands.dj;
+
+import com.jagrosh.jdautilities.command.CommandEvent;
+import com.jagrosh.jmusicbot.Bot;
+import com.jagrosh.jmusicbot.audio.AudioHandler;
+import com.jagrosh.jmusicbot.audio.filter.FilterSettings;
+import com.jagrosh.jmusicbot.commands.DJCommand;
+import com.sedmelluq.discord.lavaplayer.filter.equalizer.Equalizer;
+
+public class FilterCmd extends DJCommand {
+    public FilterCmd(Bot bot) {
+        super(bot);
+        this.name = "filter";
+        this.help = "shows or changes the audio effects";
+        this.arguments = "[eq <band> <gain>|bass <0-100>|speed <0.5-2>|nightcore|karaoke|reset]";
+        this.aliases = bot.getConfig().getAliases(this.name);
+    }
+
+    @Override
+    public void doCommand(CommandEvent event) {
+        AudioHandler handler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
+        FilterSettings settings = handler.getFilterSettings();
+        String[] parts = event.getArgs().trim().toLowerCase().split("\\s+");
+
+        try {
+            switch (parts[0]) {
+                case "":
+                    event.reply("Current filters: " + settings);
+                    return;
+                case "eq":
+                    int band = Integer.parseInt(parts[1]);
+                    float gain = Float.parseFloat(parts[2]);
+                    if (band < 1 || band > Equalizer.BAND_COUNT) {
+                        event.replyError("The band must be between 1 and " + Equalizer.BAND_COUNT + "!");
+                        return;
+                    }
+                    if (!Float.isFinite(gain) || gain < FilterSettings.MIN_GAIN || gain > FilterSettings.MAX_GAIN) {
+                        event.replyError("The gain must be between `" + FilterSettings.MIN_GAIN + "` and `"
+                                + FilterSettings.MAX_GAIN + "`!");
+                        return;
+                    }
+                    settings.setGain(band - 1, gain);
+                    break;
+                case "bass":
+                    int boost = Integer.parseInt(parts[1]);
+                    if (boost < 0 || boost > 100) {
+                        event.replyError("Bass boost must be between 0 and 100!");
+                        return;
+                    }
+                    settings.setBassBoost(boost);
+                    break;
+                case "speed":
+                    double speed = Double.parseDouble(parts[1]);
+                    if (!Double.isFinite(speed) || speed < 0.5 || speed > 2) {
+                        event.replyError("Speed must be between 0.5 and 2!");
+                        return;
+                    }
+                    settings.setSpeed(speed);
+                    break;
+                case "nightcore":
+                    settings.setSpeed(settings.getSpeed() == FilterSettings.NIGHTCORE_SPEED ? 1.0
+                            : FilterSettings.NIGHTCORE_SPEED);
+                    break;
+                case "karaoke":
+                    settings.setKaraoke(!settings.isKaraoke());
+                    break;
+                case "reset":
+                case "off":
+                    settings.reset();
+                    break;
+                default:
+                    event.replyError("Valid options are `eq <band> <gain>`, `bass <0-100>`, `speed <0.5-2>`, "
+                            + "`nightcore`, `karaoke` or `reset`");
+                    return;
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            event.replyError("Usage: `" + event.getClient().getPrefix() + name + " " + arguments + "`");
+            return;
+        }
+
+        handler.updateFilters();
+        event.replySuccess("Filters are now: " + settings);
+    }
+}
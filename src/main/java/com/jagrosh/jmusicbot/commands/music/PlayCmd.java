@@ -25,13 +25,24 @@ import com.jagrosh.jdautilities.command.CommandEvent;
 import com.jagrosh.jdautilities.menu.ButtonMenu;
 import com.jagrosh.jmusicbot.Bot;
 import com.jagrosh.jmusicbot.audio.AudioHandler;
+import com.jagrosh.jmusicbot.audio.FairLoadScheduler;
 import com.jagrosh.jmusicbot.audio.QueuedTrack;
+import com.jagrosh.jmusicbot.audio.source.StreamingYoutubePlaylistLoader;
 import com.jagrosh.jmusicbot.commands.DJCommand;
 import com.jagrosh.jmusicbot.commands.MusicCommand;
+import com.jagrosh.jmusicbot.library.LibraryEntry;
+import com.jagrosh.jmusicbot.library.LibraryIndex;
 import com.jagrosh.jmusicbot.playlist.PlaylistLoader.Playlist;
 import com.jagrosh.jmusicbot.utils.FormatUtil;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Message;
@@ -43,6 +54,12 @@ import net.dv8tion.jda.api.exceptions.PermissionException;
 public class PlayCmd extends MusicCommand {
     private final static String LOAD = "\uD83D\uDCE5"; // 📥
     private final static String CANCEL = "\uD83D\uDEAB"; // 🚫
+    // How often the message of a streamed playlist shows how far it got, in milliseconds.
+    private final static long PROGRESS_INTERVAL = 3000;
+    private final static int MAX_BATCH = 25;
+    // How many songs of a batch are loaded at once.
+    private final static int BATCH_PARALLELISM = 4;
+    private final static String SEARCH_KEY = "search";
 
     private final String loadingEmoji;
 
@@ -73,6 +90,7 @@ public class PlayCmd extends MusicCommand {
             StringBuilder builder = new StringBuilder(event.getClient().getWarning() + " Play Commands:\n");
             builder.append("\n`").append(event.getClient().getPrefix()).append(name).append(" <song title>` - plays the first result from Youtube");
             builder.append("\n`").append(event.getClient().getPrefix()).append(name).append(" <URL>` - plays the provided song, playlist, or stream");
+            builder.append("\n`").append(event.getClient().getPrefix()).append(name).append(" <song> | <song> | ...` - plays several songs, also one per line");
             for (Command cmd : children)
                 builder.append("\n`").append(event.getClient().getPrefix()).append(name).append(" ").append(cmd.getName()).append(" ").append(cmd.getArguments()).append("` - ").append(cmd.getHelp());
             event.reply(builder.toString());
@@ -81,13 +99,380 @@ public class PlayCmd extends MusicCommand {
         String args = event.getArgs().startsWith("<") && event.getArgs().endsWith(">")
                 ? event.getArgs().substring(1, event.getArgs().length() - 1)
                 : event.getArgs().isEmpty() ? event.getMessage().getAttachments().get(0).getUrl() : event.getArgs();
-        event.reply(loadingEmoji + " Loading... `[" + args + "]`", m -> bot.getPlayerManager().loadItemOrdered(event.getGuild(), args, new ResultHandler(m, event, false)));
+        List<String> queries = splitQueries(args);
+        if (queries.size() > 1) {
+            if (queries.size() > MAX_BATCH) {
+                event.replyError("You can play at most " + MAX_BATCH + " songs at once.");
+                return;
+            }
+            event.reply(loadingEmoji + " Loading `" + queries.size() + "` songs...", m -> new BatchLoader(m, event, queries).start());
+            return;
+        }
+        event.reply(loadingEmoji + " Loading... `[" + args + "]`", m -> {
+            if (StreamingYoutubePlaylistLoader.isPlaylistUrl(args)) {
+                PlaylistStreamHandler handler = new PlaylistStreamHandler(m, event);
+                bot.getPlayerManager().loadPlaylistProgressively(event.getGuild(), args, handler, handler);
+            } else if (!looksLikeUrl(args))
+                new SpeculativeLoad(m, event, args).start();
+            else
+                bot.getPlayerManager().loadItemOrdered(event.getGuild(), args, new ResultHandler(m, event, false));
+        });
+    }
+
+    private static boolean looksLikeUrl(String args) {
+        return args.contains("://") || args.startsWith("www.");
+    }
+
+    /**
+     * @return the queries of a batch, separated by new lines or {@code |}, or just the argument if it is a single one
+     */
+    private static List<String> splitQueries(String args) {
+        List<String> queries = new ArrayList<>();
+        for (String query : args.split("[\\n|]")) {
+            query = query.trim();
+            if (query.startsWith("<") && query.endsWith(">"))
+                query = query.substring(1, query.length() - 1);
+            if (!query.isEmpty())
+                queries.add(query);
+        }
+        return queries;
+    }
+
+    /**
+     * @return the best library file with every word of the query, or null if there is none
+     */
+    private AudioTrack searchLibrary(String query) {
+        LibraryIndex library = bot.getPlayerManager().getLibrary();
+        if (library == null)
+            return null;
+        for (LibraryEntry entry : library.searchExact(query, 1)) {
+            try {
+                return library.load(entry);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads an argument that isn't a link both as it is and as a YouTube search at the same time, instead of searching
+     * only once loading it as it is found nothing. The direct load still comes first: the search result is only used
+     * if neither it nor the library finds anything, and the search is cancelled as soon as one of them does.
+     * <p>
+     * Cancelling only takes the search out of the load queue if it hasn't started yet. A search that is already
+     * loading isn't aborted, since other guilds may be waiting for the same load, so its result is just ignored.
+     */
+    private class SpeculativeLoad {
+        private final Message m;
+        private final CommandEvent event;
+        private final String args;
+        private Future<Void> search;
+        // Null until the direct load is done, then whether it or the library found something.
+        private Boolean directFound = null;
+        private Consumer<AudioLoadResultHandler> searchResult = null;
+        private boolean searchCancelled = false;
+
+        private SpeculativeLoad(Message m, CommandEvent event, String args) {
+            this.m = m;
+            this.event = event;
+            this.args = args;
+        }
+
+        private void start() {
+            synchronized (this) {
+                // Searches get a key of their own, so they don't wait for the guild's direct loads.
+                search = bot.getPlayerManager().loadItemOrdered(FairLoadScheduler.key(event.getGuild().getIdLong(), SEARCH_KEY),
+                        "ytsearch:" + args, new Outcome() {
+                            @Override
+                            protected void completed(Consumer<AudioLoadResultHandler> result, boolean found) {
+                                searchLoaded(result);
+                            }
+                        });
+            }
+            bot.getPlayerManager().loadItemOrdered(event.getGuild(), args, new Outcome() {
+                @Override
+                protected void completed(Consumer<AudioLoadResultHandler> result, boolean found) {
+                    directLoaded(result, found);
+                }
+            });
+        }
+
+        private void directLoaded(Consumer<AudioLoadResultHandler> result, boolean found) {
+            ResultHandler handler = new ResultHandler(m, event, false);
+            if (found)
+                result.accept(handler);
+            else {
+                AudioTrack local = searchLibrary(args);
+                if (local != null) {
+                    handler.loadSingle(local, null);
+                    found = true;
+                }
+            }
+            Consumer<AudioLoadResultHandler> pending;
+            synchronized (this) {
+                directFound = found;
+                if (found) {
+                    searchCancelled = true;
+                    search.cancel(false);
+                    return;
+                }
+                pending = searchResult;
+            }
+            if (pending != null)
+                pending.accept(new ResultHandler(m, event, true));
+        }
+
+        private void searchLoaded(Consumer<AudioLoadResultHandler> result) {
+            synchronized (this) {
+                if (searchCancelled)
+                    return;
+                if (directFound == null) {
+                    searchResult = result;
+                    return;
+                }
+            }
+            result.accept(new ResultHandler(m, event, true));
+        }
+    }
+
+    /**
+     * Turns the callbacks of a load into one result, which can be passed on to a handler later.
+     */
+    private static abstract class Outcome implements AudioLoadResultHandler {
+        /**
+         * @param found whether the load found anything, failures included
+         */
+        protected abstract void completed(Consumer<AudioLoadResultHandler> result, boolean found);
+
+        @Override
+        public void trackLoaded(AudioTrack track) {
+            completed(h -> h.trackLoaded(track), true);
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist playlist) {
+            completed(h -> h.playlistLoaded(playlist), true);
+        }
+
+        @Override
+        public void noMatches() {
+            completed(AudioLoadResultHandler::noMatches, false);
+        }
+
+        @Override
+        public void loadFailed(FriendlyException exception) {
+            completed(h -> h.loadFailed(exception), true);
+        }
+    }
+
+    /**
+     * Loads the queries of a batch a few at a time, and once all are done adds their tracks to the queue in the order
+     * they were given, and sums up the result in one message. Queries that aren't found are searched for, like a
+     * single one would be.
+     */
+    private class BatchLoader {
+        private final Message m;
+        private final CommandEvent event;
+        private final List<String> queries;
+        private final List<List<AudioTrack>> results;
+        private final String[] errors;
+        private final AtomicInteger remaining;
+        // Loads with the same key run one after another, so there are at most as many at once as there are lanes.
+        private final Object[] lanes = new Object[BATCH_PARALLELISM];
+
+        private BatchLoader(Message m, CommandEvent event, List<String> queries) {
+            this.m = m;
+            this.event = event;
+            this.queries = queries;
+            this.results = new ArrayList<>(Collections.nCopies(queries.size(), Collections.emptyList()));
+            this.errors = new String[queries.size()];
+            this.remaining = new AtomicInteger(queries.size());
+            for (int i = 0; i < lanes.length; i++)
+                lanes[i] = new Object();
+        }
+
+        private void start() {
+            for (int i = 0; i < queries.size(); i++)
+                load(i, queries.get(i), false);
+        }
+
+        private void load(int index, String identifier, boolean ytsearch) {
+            Object key = FairLoadScheduler.key(event.getGuild().getIdLong(), lanes[index % lanes.length]);
+            bot.getPlayerManager().loadItemOrdered(key, identifier, new AudioLoadResultHandler() {
+                @Override
+                public void trackLoaded(AudioTrack track) {
+                    finish(index, Collections.singletonList(track), null);
+                }
+
+                @Override
+                public void playlistLoaded(AudioPlaylist playlist) {
+                    if (playlist.getTracks().isEmpty())
+                        noMatches();
+                    else if (playlist.getSelectedTrack() != null)
+                        finish(index, Collections.singletonList(playlist.getSelectedTrack()), null);
+                    else if (playlist.isSearchResult())
+                        finish(index, Collections.singletonList(playlist.getTracks().get(0)), null);
+                    else
+                        finish(index, playlist.getTracks(), null);
+                }
+
+                @Override
+                public void noMatches() {
+                    if (ytsearch) {
+                        finish(index, Collections.emptyList(), "No results found.");
+                        return;
+                    }
+                    AudioTrack local = searchLibrary(queries.get(index));
+                    if (local != null)
+                        finish(index, Collections.singletonList(local), null);
+                    else
+                        load(index, "ytsearch:" + queries.get(index), true);
+                }
+
+                @Override
+                public void loadFailed(FriendlyException throwable) {
+                    finish(index, Collections.emptyList(),
+                            throwable.severity == Severity.COMMON ? throwable.getMessage() : "Error loading track.");
+                }
+            });
+        }
+
+        private void finish(int index, List<AudioTrack> tracks, String error) {
+            results.set(index, tracks);
+            errors[index] = error;
+            if (remaining.decrementAndGet() == 0)
+                enqueue();
+        }
+
+        private void enqueue() {
+            AudioHandler handler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
+            int room = bot.getConfig().getPlaylistLimit() - handler.getQueue().size();
+            List<QueuedTrack> added = new ArrayList<>();
+            int omitted = 0;
+            boolean full = false;
+            for (List<AudioTrack> tracks : results) {
+                for (AudioTrack track : tracks) {
+                    if (added.size() >= room) {
+                        full = true;
+                        break;
+                    }
+                    if (bot.getConfig().isTooLong(track))
+                        omitted++;
+                    else
+                        added.add(new QueuedTrack(track, event.getAuthor()));
+                }
+                if (full)
+                    break;
+            }
+            int pos = handler.addTracks(added) + 1;
+
+            StringBuilder builder = new StringBuilder(added.isEmpty()
+                    ? event.getClient().getWarning() + " No tracks were added!"
+                    : event.getClient().getSuccess() + " Added **" + added.size() + "** tracks "
+                    + (pos == 0 ? "and began playing" : "to the queue from position " + pos) + "!");
+            if (omitted > 0)
+                builder.append("\n").append(event.getClient().getWarning()).append(" ").append(omitted)
+                        .append(" tracks longer than the allowed maximum (`").append(bot.getConfig().getMaxTime()).append("`) have been omitted.");
+            if (full)
+                builder.append("\n").append(event.getClient().getWarning()).append(" The queue is full (`")
+                        .append(bot.getConfig().getPlaylistLimit()).append("` entries), so the rest of the batch was left out.");
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] != null)
+                    builder.append("\n`[").append(i + 1).append("]` **").append(queries.get(i)).append("**: ").append(errors[i]);
+            }
+            String str = builder.toString();
+            if (str.length() > 2000)
+                str = str.substring(0, 1994) + " (...)";
+            m.editMessage(FormatUtil.filter(str)).queue();
+        }
+    }
+
+    /**
+     * Adds the tracks of a YouTube playlist as its pages load, keeping one message up to date with the progress.
+     * Results that weren't streamed are handled like any other load.
+     */
+    private class PlaylistStreamHandler implements AudioLoadResultHandler, StreamingYoutubePlaylistLoader.Listener {
+        private final Message m;
+        private final CommandEvent event;
+        private final ResultHandler fallback;
+        private int added = 0;
+        private int omitted = 0;
+        private boolean full = false;
+        private long lastProgress = 0;
+
+        private PlaylistStreamHandler(Message m, CommandEvent event) {
+            this.m = m;
+            this.event = event;
+            this.fallback = new ResultHandler(m, event, false);
+        }
+
+        @Override
+        public boolean tracksLoaded(List<AudioTrack> tracks) {
+            AudioHandler handler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
+            int room = bot.getConfig().getPlaylistLimit() - handler.getQueue().size();
+            List<QueuedTrack> page = new ArrayList<>(tracks.size());
+            for (AudioTrack track : tracks) {
+                if (page.size() >= room) {
+                    full = true;
+                    break;
+                }
+                if (bot.getConfig().isTooLong(track))
+                    omitted++;
+                else
+                    page.add(new QueuedTrack(track, event.getAuthor()));
+            }
+            handler.addTracks(page);
+            added += page.size();
+            long now = System.currentTimeMillis();
+            if (!full && now - lastProgress >= PROGRESS_INTERVAL) {
+                lastProgress = now;
+                m.editMessage(loadingEmoji + " Loading playlist... added `" + added + "` tracks so far").queue();
+            }
+            return !full;
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack track) {
+            fallback.trackLoaded(track);
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist playlist) {
+            if (added == 0 && !full) {
+                fallback.playlistLoaded(playlist);
+                return;
+            }
+            m.editMessage(FormatUtil.filter(event.getClient().getSuccess() + " Found "
+                    + (playlist.getName() == null ? "a playlist" : "playlist **" + playlist.getName() + "**") + " with `"
+                    + playlist.getTracks().size() + "` entries; added `" + added + "` to the queue!"
+                    + (omitted > 0 ? "\n" + event.getClient().getWarning() + " Tracks longer than the allowed maximum (`"
+                    + bot.getConfig().getMaxTime() + "`) have been omitted." : "")
+                    + (full ? "\n" + event.getClient().getWarning() + " The queue is full (`"
+                    + bot.getConfig().getPlaylistLimit() + "` entries), so the rest of the playlist was left out." : ""))).queue();
+        }
+
+        @Override
+        public void noMatches() {
+            fallback.noMatches();
+        }
+
+        @Override
+        public void loadFailed(FriendlyException throwable) {
+            if (added == 0)
+                fallback.loadFailed(throwable);
+            else
+                m.editMessage(event.getClient().getError() + " Stopped loading the playlist after adding `" + added + "` tracks"
+                        + (throwable.severity == Severity.COMMON ? ": " + throwable.getMessage() : ".")).queue();
+        }
     }
 
     private class ResultHandler implements AudioLoadResultHandler {
         private final Message m;
         private final CommandEvent event;
         private final boolean ytsearch;
+        // Whether the queue reached the playlist limit while adding a playlist.
+        private boolean full = false;
 
         private ResultHandler(Message m, CommandEvent event, boolean ytsearch) {
             this.m = m;
@@ -130,15 +515,19 @@ public class PlayCmd extends MusicCommand {
         }
 
         private int loadPlaylist(AudioPlaylist playlist, AudioTrack exclude) {
-            int[] count = {0};
-            playlist.getTracks().stream().forEach((track) -> {
-                if (!bot.getConfig().isTooLong(track) && !track.equals(exclude)) {
-                    AudioHandler handler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
-                    handler.addTrack(new QueuedTrack(track, event.getAuthor()));
-                    count[0]++;
+            AudioHandler handler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
+            int room = bot.getConfig().getPlaylistLimit() - handler.getQueue().size();
+            List<QueuedTrack> tracks = new ArrayList<>();
+            for (AudioTrack track : playlist.getTracks()) {
+                if (tracks.size() >= room) {
+                    full = true;
+                    break;
                 }
-            });
-            return count[0];
+                if (!bot.getConfig().isTooLong(track) && !track.equals(exclude))
+                    tracks.add(new QueuedTrack(track, event.getAuthor()));
+            }
+            handler.addTracks(tracks);
+            return tracks.size();
         }
 
         @Override
@@ -156,15 +545,20 @@ public class PlayCmd extends MusicCommand {
                 loadSingle(single, playlist);
             } else {
                 int count = loadPlaylist(playlist, null);
-                if (count == 0) {
+                if (count == 0 && full) {
+                    m.editMessage(FormatUtil.filter(event.getClient().getWarning() + " The queue is full (`"
+                            + bot.getConfig().getPlaylistLimit() + "` entries), so the playlist was not added.")).queue();
+                } else if (count == 0) {
                     m.editMessage(FormatUtil.filter(event.getClient().getWarning() + " All entries in this playlist " + (playlist.getName() == null ? "" : "(**" + playlist.getName()
                             + "**) ") + "were longer than the allowed maximum (`" + bot.getConfig().getMaxTime() + "`)")).queue();
                 } else {
                     m.editMessage(FormatUtil.filter(event.getClient().getSuccess() + " Found "
                             + (playlist.getName() == null ? "a playlist" : "playlist **" + playlist.getName() + "**") + " with `"
                             + playlist.getTracks().size() + "` entries; added to the queue!"
-                            + (count < playlist.getTracks().size() ? "\n" + event.getClient().getWarning() + " Tracks longer than the allowed maximum (`"
-                            + bot.getConfig().getMaxTime() + "`) have been omitted." : ""))).queue();
+                            + (count < playlist.getTracks().size() && !full ? "\n" + event.getClient().getWarning() + " Tracks longer than the allowed maximum (`"
+                            + bot.getConfig().getMaxTime() + "`) have been omitted." : "")
+                            + (full ? "\n" + event.getClient().getWarning() + " The queue is full (`"
+                            + bot.getConfig().getPlaylistLimit() + "` entries), so only `" + count + "` were added." : ""))).queue();
                 }
             }
         }
@@ -173,8 +567,13 @@ public class PlayCmd extends MusicCommand {
         public void noMatches() {
             if (ytsearch)
                 m.editMessage(FormatUtil.filter(event.getClient().getWarning() + " No results found for `" + event.getArgs() + "`.")).queue();
-            else
-                bot.getPlayerManager().loadItemOrdered(event.getGuild(), "ytsearch:" + event.getArgs(), new ResultHandler(m, event, true));
+            else {
+                AudioTrack local = searchLibrary(event.getArgs());
+                if (local != null)
+                    loadSingle(local, null);
+                else
+                    bot.getPlayerManager().loadItemOrdered(event.getGuild(), "ytsearch:" + event.getArgs(), new ResultHandler(m, event, true));
+            }
         }
 
         @Override
@@ -211,7 +610,7 @@ public class PlayCmd extends MusicCommand {
             event.getChannel().sendMessage(loadingEmoji + " Loading playlist **" + event.getArgs() + "**... (" + playlist.getItems().size() + " items)").queue(m ->
             {
                 AudioHandler handler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
-                playlist.loadTracks(bot.getPlayerManager(), (at) -> handler.addTrack(new QueuedTrack(at, event.getAuthor())), () -> {
+                playlist.loadTracks(bot.getPlayerManager(), event.getGuild().getIdLong(), (at) -> handler.addTrack(new QueuedTrack(at, event.getAuthor())), () -> {
                     StringBuilder builder = new StringBuilder(playlist.getTracks().isEmpty()
                             ? event.getClient().getWarning() + " No tracks were loaded!"
                             : event.getClient().getSuccess() + " Loaded **" + playlist.getTracks().size() + "** tracks!");
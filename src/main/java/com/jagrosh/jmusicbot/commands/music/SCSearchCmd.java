@@ -24,6 +24,7 @@ public class SCSearchCmd extends SearchCmd {
     public SCSearchCmd(Bot bot) {
         super(bot);
         this.searchPrefix = "scsearch:";
+        this.searchLibrary = false;
         this.name = "scsearch";
         this.help = "searches Soundcloud for a provided query";
         this.aliases = bot.getConfig().getAliases(this.name);
@@ -20,7 +20,11 @@ import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException.Severity;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import com.jagrosh.jdautilities.command.CommandEvent;
@@ -28,7 +32,10 @@ import com.jagrosh.jdautilities.menu.OrderedMenu;
 import com.jagrosh.jmusicbot.Bot;
 import com.jagrosh.jmusicbot.audio.AudioHandler;
 import com.jagrosh.jmusicbot.audio.QueuedTrack;
+import com.jagrosh.jmusicbot.audio.SearchCache;
 import com.jagrosh.jmusicbot.commands.MusicCommand;
+import com.jagrosh.jmusicbot.library.LibraryEntry;
+import com.jagrosh.jmusicbot.library.LibraryIndex;
 import com.jagrosh.jmusicbot.utils.FormatUtil;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Message;
@@ -37,7 +44,11 @@ import net.dv8tion.jda.api.entities.Message;
  * @author John Grosh <john.a.grosh@gmail.com>
  */
 public class SearchCmd extends MusicCommand {
+    private static final int MAX_RESULTS = 10;
+
     protected String searchPrefix = "ytsearch:";
+    // Whether the local library is searched before the search source.
+    protected boolean searchLibrary = true;
     private final OrderedMenu.Builder builder;
     private final String searchingEmoji;
 
@@ -65,8 +76,38 @@ public class SearchCmd extends MusicCommand {
             event.replyError("Please include a query.");
             return;
         }
-        event.reply(searchingEmoji + " Searching... `[" + event.getArgs() + "]`",
-                m -> bot.getPlayerManager().loadItemOrdered(event.getGuild(), searchPrefix + event.getArgs(), new ResultHandler(m, event)));
+        AudioPlaylist local = searchLibrary ? searchLibrary(event.getArgs()) : null;
+        if (local != null) {
+            event.reply(searchingEmoji + " Searching the library... `[" + event.getArgs() + "]`",
+                    m -> new ResultHandler(m, event).playlistLoaded(local));
+            return;
+        }
+        SearchCache cache = bot.getPlayerManager().getSearchCache();
+        AudioPlaylist cached = cache == null ? null : cache.lookup(searchPrefix + event.getArgs());
+        event.reply(searchingEmoji + " Searching... `[" + event.getArgs() + "]`", m -> {
+            if (cached != null)
+                new ResultHandler(m, event).playlistLoaded(cached);
+            else
+                bot.getPlayerManager().loadItemOrdered(event.getGuild(), searchPrefix + event.getArgs(), new ResultHandler(m, event));
+        });
+    }
+
+    /**
+     * @return the best matches for the query in the local library, or null if there are none
+     */
+    private AudioPlaylist searchLibrary(String query) {
+        LibraryIndex library = bot.getPlayerManager().getLibrary();
+        if (library == null)
+            return null;
+        List<AudioTrack> tracks = new ArrayList<>();
+        for (LibraryEntry entry : library.search(query, MAX_RESULTS)) {
+            try {
+                tracks.add(library.load(entry));
+            } catch (IOException e) {
+                // Indexed with a source that isn't there anymore
+            }
+        }
+        return tracks.isEmpty() ? null : new BasicAudioPlaylist("Library", tracks, null, true);
     }
 
     private class ResultHandler implements AudioLoadResultHandler {
@@ -115,7 +156,7 @@ public class SearchCmd extends MusicCommand {
                     })
                     .setUsers(event.getAuthor())
             ;
-            for (int i = 0; i < 10 && i < playlist.getTracks().size(); i++) {
+            for (int i = 0; i < MAX_RESULTS && i < playlist.getTracks().size(); i++) {
                 AudioTrack track = playlist.getTracks().get(i);
                 builder.addChoices("`[" + FormatUtil.formatTime(track.getDuration()) + "]` [**" + track.getInfo().title + "**](" + track.getInfo().uri + ")");
             }
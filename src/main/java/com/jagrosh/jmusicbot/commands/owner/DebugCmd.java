@@ -18,7 +18,9 @@ package com.jagrosh.jmusicbot.commands.owner;
 import com.jagrosh.jdautilities.command.CommandEvent;
 import com.jagrosh.jdautilities.commons.JDAUtilitiesInfo;
 import com.jagrosh.jmusicbot.Bot;
+import com.jagrosh.jmusicbot.audio.PlaybackMetrics;
 import com.jagrosh.jmusicbot.commands.OwnerCommand;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
 import com.jagrosh.jmusicbot.utils.OtherUtil;
 import com.sedmelluq.discord.lavaplayer.tools.PlayerLibrary;
 import net.dv8tion.jda.api.JDAInfo;
@@ -68,6 +70,13 @@ public class DebugCmd extends OwnerCommand {
         sb.append("\n\nRuntime Information:")
                 .append("\n  Total Memory = ").append(total)
                 .append("\n  Used Memory = ").append(used);
+        MetricsRegistry metrics = bot.getMetrics();
+        sb.append("\n\nMetrics:").append(metrics.summary());
+        for (long guildId : metrics.topGuilds(PlaybackMetrics.UNDERRUNS, 5)) {
+            sb.append("\n\nGuild ").append(guildId).append(":");
+            metrics.getCounters(guildId).forEach((name, counter) -> sb.append("\n  ").append(name).append(" = ").append(counter));
+            metrics.getHistograms(guildId).forEach((name, histogram) -> sb.append("\n  ").append(name).append(" = ").append(histogram));
+        }
         sb.append("\n\nDiscord Information:")
                 .append("\n  ID = ").append(event.getJDA().getSelfUser().getId())
                 .append("\n  Guilds = ").append(event.getJDA().getGuildCache().size())
@@ -0,0 +1,89 @@
+package com.jagrosh.jmusicbot.library;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A file of the local music library, with the tags it was indexed with and its track encoded, so it can be played
+ * without reading the file again.
+ */
+public class LibraryEntry {
+    private final String path;
+    private final long size;
+    private final long modified;
+    private final String title;
+    private final String artist;
+    private final String album;
+    private final long duration;
+    private final byte[] track;
+
+    public LibraryEntry(String path, long size, long modified, String title, String artist, String album,
+            long duration, byte[] track) {
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.duration = duration;
+        this.track = track;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public byte[] getTrack() {
+        return track;
+    }
+
+    void write(DataOutput output) throws IOException {
+        output.writeUTF(path);
+        output.writeLong(size);
+        output.writeLong(modified);
+        output.writeUTF(title);
+        output.writeUTF(artist);
+        output.writeUTF(album);
+        output.writeLong(duration);
+        output.writeInt(track.length);
+        output.write(track);
+    }
+
+    static LibraryEntry read(DataInput input) throws IOException {
+        String path = input.readUTF();
+        long size = input.readLong();
+        long modified = input.readLong();
+        String title = input.readUTF();
+        String artist = input.readUTF();
+        String album = input.readUTF();
+        long duration = input.readLong();
+        byte[] track = new byte[input.readInt()];
+        input.readFully(track);
+        return new LibraryEntry(path, size, modified, title, artist, album, duration, track);
+    }
+}
@@ -0,0 +1,293 @@
+package com.jagrosh.jmusicbot.library;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagrosh.jmusicbot.audio.source.MappedLocalAudioSourceManager;
+import com.jagrosh.jmusicbot.metrics.MetricsRegistry;
+import com.jagrosh.jmusicbot.utils.TrackUtil;
+import com.sedmelluq.discord.lavaplayer.container.MediaContainerDetection;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioReference;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+
+/**
+ * Indexes the music in the configured library folders, so songs can be found by their title, artist or album. The
+ * index is saved to a file and loaded on start, after which the folders are scanned for changes once and then watched,
+ * so only new and changed files are read.
+ * <p>
+ * Tags are read by lavaplayer's container detection, which gives the title, artist and duration. The album is taken
+ * from the name of the folder a file is in.
+ */
+public class LibraryIndex {
+    public static final String FILES = "library.files";
+
+    private static final Logger LOG = LoggerFactory.getLogger("LibraryIndex");
+
+    private static final int MAGIC = 0x4C494252;
+    private static final Set<String> EXTENSIONS = new HashSet<>(
+            Arrays.asList("mp3", "flac", "ogg", "opus", "m4a", "mp4", "aac", "wav", "webm", "mka"));
+    // Changes are saved once the folders have been quiet for this long.
+    private static final long SAVE_DELAY = 5;
+
+    private final Path file;
+    private final List<Path> folders;
+    private final DefaultAudioPlayerManager manager;
+    private final MappedLocalAudioSourceManager source;
+
+    // Absolute path -> entry, sorted so the files below a folder are next to each other.
+    private final TreeMap<String, LibraryEntry> entries = new TreeMap<>();
+    private volatile LibrarySearch search = new LibrarySearch(Collections.emptyList());
+    private boolean dirty = false;
+    private WatchService watcher;
+
+    public LibraryIndex(Path file, List<Path> folders, DefaultAudioPlayerManager manager,
+            MappedLocalAudioSourceManager source, MetricsRegistry metrics) {
+        this.file = file;
+        this.folders = folders;
+        this.manager = manager;
+        this.source = source;
+        metrics.gauge(FILES, () -> search.size());
+    }
+
+    public void init() {
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() == MAGIC) {
+                int count = input.readInt();
+                synchronized (this) {
+                    for (int i = 0; i < count; i++) {
+                        LibraryEntry entry = LibraryEntry.read(input);
+                        entries.put(entry.getPath(), entry);
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // The library hasn't been indexed yet.
+        } catch (IOException e) {
+            LOG.warn("Failed to load the library index: " + e);
+        }
+        search = new LibrarySearch(entries.values());
+
+        Thread thread = new Thread(this::run, "library");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the files matching the query, best first
+     */
+    public List<LibraryEntry> search(String query, int limit) {
+        return search.search(query, limit);
+    }
+
+    /**
+     * @return the files with a whole word for every word of the query, best first
+     */
+    public List<LibraryEntry> searchExact(String query, int limit) {
+        return search.searchExact(query, limit);
+    }
+
+    /**
+     * @return a new track playing the file
+     */
+    public AudioTrack load(LibraryEntry entry) throws IOException {
+        return TrackUtil.decode(manager, entry.getTrack());
+    }
+
+    private void run() {
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            LOG.warn("Failed to watch the library, it is only indexed on start: " + e);
+        }
+        scanAll();
+        if (watcher == null)
+            return;
+        try {
+            while (true) {
+                WatchKey key = watcher.poll(SAVE_DELAY, TimeUnit.SECONDS);
+                if (key == null) {
+                    saveIfDirty();
+                    key = watcher.take();
+                }
+                Path folder = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        scanAll();
+                        continue;
+                    }
+                    Path path = folder.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_DELETE)
+                        remove(path);
+                    else if (Files.isDirectory(path))
+                        scan(path);
+                    else
+                        index(path);
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Indexes every folder again, dropping files that are gone.
+     */
+    private void scanAll() {
+        Set<String> seen = new HashSet<>();
+        for (Path folder : folders)
+            seen.addAll(scan(folder));
+        synchronized (this) {
+            dirty |= entries.keySet().retainAll(seen);
+        }
+        saveIfDirty();
+    }
+
+    /**
+     * Indexes the new and changed files below a folder, and watches its folders.
+     *
+     * @return the paths of the audio files found
+     */
+    private Set<String> scan(Path folder) {
+        Set<String> found = new HashSet<>();
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                if (Files.isDirectory(path)) {
+                    if (watcher != null)
+                        path.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                } else if (index(path))
+                    found.add(path.toAbsolutePath().toString());
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to scan " + folder + ": " + e);
+        }
+        return found;
+    }
+
+    /**
+     * Reads the tags of a file, unless it is indexed already and hasn't changed.
+     *
+     * @return whether the file is an audio file
+     */
+    private boolean index(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || !EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT)))
+            return false;
+        File f = path.toFile();
+        String key = f.getAbsolutePath();
+        long size = f.length();
+        long modified = f.lastModified();
+        synchronized (this) {
+            LibraryEntry known = entries.get(key);
+            if (known != null && known.getSize() == size && known.getModified() == modified)
+                return true;
+        }
+
+        LibraryEntry entry;
+        try {
+            AudioItem item = source.loadItem(manager, new AudioReference(key, null));
+            if (!(item instanceof AudioTrack))
+                return false;
+            AudioTrack track = (AudioTrack) item;
+            AudioTrackInfo info = track.getInfo();
+            String title = info.title == null || info.title.equals(MediaContainerDetection.UNKNOWN_TITLE)
+                    ? name.substring(0, dot) : info.title;
+            String artist = info.author == null || info.author.equals(MediaContainerDetection.UNKNOWN_ARTIST) ? ""
+                    : info.author;
+            Path parent = path.getParent();
+            String album = parent == null || parent.getFileName() == null ? "" : parent.getFileName().toString();
+            entry = new LibraryEntry(key, size, modified, title, artist, album, info.length,
+                    TrackUtil.encode(manager, track));
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Failed to index " + key + ": " + e);
+            return false;
+        }
+        synchronized (this) {
+            entries.put(key, entry);
+            dirty = true;
+        }
+        return true;
+    }
+
+    /**
+     * Drops a file, or every file below a folder.
+     */
+    private synchronized void remove(Path path) {
+        String key = path.toAbsolutePath().toString();
+        if (entries.remove(key) != null)
+            dirty = true;
+        String prefix = key + File.separator;
+        Set<String> below = entries.subMap(prefix, prefix + Character.MAX_VALUE).keySet();
+        if (!below.isEmpty()) {
+            below.clear();
+            dirty = true;
+        }
+    }
+
+    private void saveIfDirty() {
+        List<LibraryEntry> snapshot;
+        synchronized (this) {
+            if (!dirty)
+                return;
+            dirty = false;
+            snapshot = new ArrayList<>(entries.values());
+        }
+        search = new LibrarySearch(snapshot);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(buffer))) {
+            output.writeInt(MAGIC);
+            output.writeInt(snapshot.size());
+            for (LibraryEntry entry : snapshot)
+                entry.write(output);
+        } catch (IOException e) {
+            LOG.warn("Failed to encode the library index: " + e);
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, buffer.toByteArray());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("Failed to save the library index: " + e);
+        }
+        LOG.info("Indexed " + snapshot.size() + " files in the library");
+    }
+}
@@ -0,0 +1,153 @@
+package com.jagrosh.jmusicbot.library;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A word index over the library at one point in time. Every word of a file's title, artist and album points to the
+ * file, and the words are sorted, so all words starting with a query word are found with a binary search.
+ * <p>
+ * Every query word has to match a word of a file. A whole word counts most, then a word that starts with it, and
+ * words one typo away only count if no word starts with it.
+ */
+public class LibrarySearch {
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int FUZZY = 1;
+    // Shorter words are too likely to be one typo away from some other word.
+    private static final int FUZZY_MIN_LENGTH = 4;
+
+    private final LibraryEntry[] entries;
+    private final String[] words;
+    private final int[][] postings;
+
+    public LibrarySearch(Collection<LibraryEntry> library) {
+        this.entries = library.toArray(new LibraryEntry[0]);
+        TreeMap<String, List<Integer>> index = new TreeMap<>();
+        for (int i = 0; i < entries.length; i++) {
+            LibraryEntry entry = entries[i];
+            for (String word : words(entry.getTitle() + " " + entry.getArtist() + " " + entry.getAlbum()))
+                index.computeIfAbsent(word, w -> new ArrayList<>()).add(i);
+        }
+        this.words = index.keySet().toArray(new String[0]);
+        this.postings = new int[words.length][];
+        int w = 0;
+        for (List<Integer> ids : index.values())
+            postings[w++] = ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return the files matching every word of the query, best first
+     */
+    public List<LibraryEntry> search(String query, int limit) {
+        return search(query, limit, false);
+    }
+
+    /**
+     * @return the files with a whole word for every word of the query, best first
+     */
+    public List<LibraryEntry> searchExact(String query, int limit) {
+        return search(query, limit, true);
+    }
+
+    private List<LibraryEntry> search(String query, int limit, boolean exact) {
+        Set<String> queryWords = words(query);
+        if (queryWords.isEmpty())
+            return Collections.emptyList();
+
+        Map<Integer, Integer> scores = null;
+        for (String queryWord : queryWords) {
+            Map<Integer, Integer> matches = match(queryWord);
+            if (matches.isEmpty())
+                return Collections.emptyList();
+            if (scores == null)
+                scores = matches;
+            else {
+                scores.keySet().retainAll(matches.keySet());
+                for (Map.Entry<Integer, Integer> score : scores.entrySet())
+                    score.setValue(score.getValue() + matches.get(score.getKey()));
+            }
+        }
+
+        if (exact)
+            scores.values().removeIf(score -> score < EXACT * queryWords.size());
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Comparator.<Map.Entry<Integer, Integer>>comparingInt(Map.Entry::getValue).reversed()
+                .thenComparing(e -> entries[e.getKey()].getTitle().length())
+                .thenComparing(e -> entries[e.getKey()].getTitle()));
+        List<LibraryEntry> results = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < limit && i < ranked.size(); i++)
+            results.add(entries[ranked.get(i).getKey()]);
+        return results;
+    }
+
+    /**
+     * @return the files with a word matching the query word, with the score of their best match
+     */
+    private Map<Integer, Integer> match(String queryWord) {
+        Map<Integer, Integer> matches = new HashMap<>();
+        int from = Arrays.binarySearch(words, queryWord);
+        for (int i = from < 0 ? -from - 1 : from; i < words.length && words[i].startsWith(queryWord); i++) {
+            int score = words[i].length() == queryWord.length() ? EXACT : PREFIX;
+            for (int id : postings[i])
+                matches.merge(id, score, Math::max);
+        }
+        if (matches.isEmpty() && queryWord.length() >= FUZZY_MIN_LENGTH) {
+            for (int i = 0; i < words.length; i++) {
+                if (withinOneEdit(words[i], queryWord)) {
+                    for (int id : postings[i])
+                        matches.put(id, FUZZY);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the lower case words of a text, without accents and punctuation
+     */
+    static Set<String> words(String text) {
+        String plain = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+        Set<String> words = new LinkedHashSet<>();
+        for (String word : plain.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty())
+                words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * @return whether one character can be inserted, removed or replaced to turn one word into the other
+     */
+    private static boolean withinOneEdit(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > 1)
+            return false;
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int i = 0;
+        while (i < b.length() && a.charAt(i) == b.charAt(i))
+            i++;
+        if (a.length() == b.length())
+            return a.regionMatches(i + 1, b, i + 1, a.length() - i - 1);
+        return a.regionMatches(i + 1, b, i, b.length() - i);
+    }
+}
@@ -0,0 +1,97 @@
+package com.jagrosh.jmusicbot.metrics;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Holds named counters, histograms and gauges. Metrics can be global, or scoped to a guild, in which case they are
+ * kept separately so that a few bad guilds can be picked out.
+ */
+public class MetricsRegistry {
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Counter>> guildCounters = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Histogram>> guildHistograms = new ConcurrentHashMap<>();
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public Counter counter(String name, long guildId) {
+        return guildCounters.computeIfAbsent(guildId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, n -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public Histogram histogram(String name, long guildId) {
+        return guildHistograms.computeIfAbsent(guildId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public void removeGuild(long guildId) {
+        guildCounters.remove(guildId);
+        guildHistograms.remove(guildId);
+    }
+
+    public Map<String, Counter> getCounters() {
+        return new TreeMap<>(counters);
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, supplier) -> values.put(name, supplier.getAsLong()));
+        return values;
+    }
+
+    public Map<String, Counter> getCounters(long guildId) {
+        return new TreeMap<>(guildCounters.getOrDefault(guildId, new ConcurrentHashMap<>()));
+    }
+
+    public Map<String, Histogram> getHistograms(long guildId) {
+        return new TreeMap<>(guildHistograms.getOrDefault(guildId, new ConcurrentHashMap<>()));
+    }
+
+    /**
+     * Finds the guilds with the highest value for a guild scoped counter.
+     *
+     * @param name  the counter name
+     * @param limit the maximum amount of guilds to return
+     * @return guild ids, highest value first, leaving out guilds where the counter is zero
+     */
+    public List<Long> topGuilds(String name, int limit) {
+        return guildCounters.entrySet().stream()
+                .filter(e -> e.getValue().containsKey(name) && e.getValue().get(name).get() > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<Long, Map<String, Counter>> e) -> e.getValue().get(name).get()).reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return a plain text summary of every global metric, one per line
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        getCounters().forEach((name, counter) -> sb.append("\n  ").append(name).append(" = ").append(counter));
+        getGauges().forEach((name, value) -> sb.append("\n  ").append(name).append(" = ").append(value));
+        getHistograms().forEach((name, histogram) -> sb.append("\n  ").append(name).append(" = ").append(histogram));
+        return sb.toString();
+    }
+}
@@ -16,6 +16,7 @@
 package com.jagrosh.jmusicbot.playlist;
 
 import com.jagrosh.jmusicbot.BotConfig;
+import com.jagrosh.jmusicbot.audio.FairLoadScheduler;
 import com.jagrosh.jmusicbot.utils.OtherUtil;
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
@@ -130,14 +131,14 @@ public class PlaylistLoader {
             this.shuffle = shuffle;
         }
 
-        public void loadTracks(AudioPlayerManager manager, Consumer<AudioTrack> consumer, Runnable callback) {
+        public void loadTracks(AudioPlayerManager manager, long guildId, Consumer<AudioTrack> consumer, Runnable callback) {
             if (loaded)
                 return;
             loaded = true;
             for (int i = 0; i < items.size(); i++) {
                 boolean last = i + 1 == items.size();
                 int index = i;
-                manager.loadItemOrdered(name, items.get(i), new AudioLoadResultHandler() {
+                manager.loadItemOrdered(FairLoadScheduler.key(guildId, name), items.get(i), new AudioLoadResultHandler() {
                     private void done() {
                         if (last) {
                             if (shuffle)
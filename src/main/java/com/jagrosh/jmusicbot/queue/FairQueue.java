@@ -28,6 +28,9 @@ import java.util.stream.Collectors;
 import com.jagrosh.jmusicbot.selectors.Selector;
 
 /**
+ * The queue is changed from the audio thread, command threads and loader threads, and read from the bot threadpool,
+ * so every method holds the queue's lock and lists are returned as copies.
+ *
  * @param <T>
  * @author John Grosh (jagrosh)
  */
@@ -48,29 +51,29 @@ public class FairQueue<T extends Queueable> {
         userQueues.put(REPEAT_SENTINEL, repeatQueue);
     }
 
-    public int add(T item) {
+    public synchronized int add(T item) {
         List<T> list = getOrCreateQueue(item.getUserIdentifier()).list;
         list.add(item);
         return globalIndex(item.getUserIdentifier(), list.size() - 1);
     }
 
-    public int addAt(int index, T item) {
+    public synchronized int addAt(int index, T item) {
         QueueIndex<T> listIndex = localIndex(index);
         List<T> list = getOrCreateQueue(item.getUserIdentifier()).list;
         list.add(Math.min(listIndex.index, list.size()), item);
         return globalIndex(item.getUserIdentifier(), listIndex.index);
     }
 
-    public int addRepeat(T item) {
+    public synchronized int addRepeat(T item) {
         repeatList.add(item);
         return repeatList.size() - 1;
     }
 
-    public int size() {
+    public synchronized int size() {
         return userQueues.values().stream().mapToInt(q -> q.list.size()).sum();
     }
 
-    public TrackFrom<T> pull() {
+    public synchronized TrackFrom<T> pull() {
         UserQueue<T> queue = pullNextQueue();
         T track = queue.list.remove(0);
 
@@ -88,36 +91,56 @@ public class FairQueue<T extends Queueable> {
         return new TrackFrom<>(track, identifiers);
     }
 
-    public boolean isEmpty() {
+    /**
+     * @return the item that {@link #pull()} would return right now, or null if the queue is empty
+     */
+    public synchronized T peek() {
+        UserQueue<T> queue = pullNextQueue();
+        return queue == null ? null : queue.list.get(0);
+    }
+
+    /**
+     * @return up to the given amount of items, in the order they are going to be played
+     */
+    public synchronized List<T> peek(int count) {
+        if (count <= 0)
+            return new ArrayList<>();
+        return foldList(FoldResult.next(new ArrayList<T>()), (accumulator, queueIndex) -> {
+            accumulator.add(queueIndex.queue.list.get(queueIndex.index));
+            return accumulator.size() < count ? FoldResult.next(accumulator) : FoldResult.done(accumulator);
+        });
+    }
+
+    public synchronized boolean isEmpty() {
         return userQueues.values().stream().allMatch(q -> q.list.isEmpty());
     }
 
-    public List<T> getList() {
+    public synchronized List<T> getList() {
         return foldList(FoldResult.next(new ArrayList<T>()), (accumulator, queueIndex) -> {
             accumulator.add(queueIndex.queue.list.get(queueIndex.index));
             return FoldResult.next(accumulator);
         });
     }
 
-    public List<T> getList(long identifier) {
-        return Collections.unmodifiableList(getOrCreateQueue(identifier).list);
+    public synchronized List<T> getList(long identifier) {
+        return Collections.unmodifiableList(new ArrayList<>(getOrCreateQueue(identifier).list));
     }
 
-    public T get(int index) {
+    public synchronized T get(int index) {
         QueueIndex<T> listIndex = localIndex(index);
         return userQueues.get(listIndex.queue.identifier).list.get(listIndex.index);
     }
 
-    public T remove(int index) {
+    public synchronized T remove(int index) {
         QueueIndex<T> listIndex = localIndex(index);
         return userQueues.get(listIndex.queue.identifier).list.remove(listIndex.index);
     }
 
-    public T specificQueueRemove(int index, long identifier) {
+    public synchronized T specificQueueRemove(int index, long identifier) {
         return userQueues.get(identifier).list.remove(index);
     }
 
-    public List<T> specificQueueRemove(List<Integer> indicies, long identifier) {
+    public synchronized List<T> specificQueueRemove(List<Integer> indicies, long identifier) {
         List<T> removed = new ArrayList<>();
         indicies.sort(null);
 
@@ -128,14 +151,14 @@ public class FairQueue<T extends Queueable> {
         return removed;
     }
 
-    public int removeAll(long identifier) {
+    public synchronized int removeAll(long identifier) {
         List<T> list = getOrCreateQueue(identifier).list;
         int size = list.size();
         list.clear();
         return size;
     }
 
-    public List<T> removeIf(long identifier, Predicate<T> filter) {
+    public synchronized List<T> removeIf(long identifier, Predicate<T> filter) {
         List<T> list = getOrCreateQueue(identifier).list;
         List<T> removed = new ArrayList<>();
 
@@ -151,7 +174,7 @@ public class FairQueue<T extends Queueable> {
         return removed;
     }
 
-    public List<T> removeIf(long identifier, Selector<T> selector) {
+    public synchronized List<T> removeIf(long identifier, Selector<T> selector) {
         List<T> list = getOrCreateQueue(identifier).list;
         List<T> removed = new ArrayList<>();
 
@@ -172,7 +195,7 @@ public class FairQueue<T extends Queueable> {
         return removed;
     }
 
-    public List<T> moveToFrontIf(long identifier, Selector<T> selector) {
+    public synchronized List<T> moveToFrontIf(long identifier, Selector<T> selector) {
         List<T> list = getOrCreateQueue(identifier).list;
         List<T> moved = new ArrayList<>();
 
@@ -198,13 +221,13 @@ public class FairQueue<T extends Queueable> {
         return moved;
     }
 
-    public void clear() {
+    public synchronized void clear() {
         for (UserQueue<T> queue : userQueues.values()) {
             queue.list.clear();
         }
     }
 
-    public int shuffle(long identifier) {
+    public synchronized int shuffle(long identifier) {
         List<T> list = getOrCreateQueue(identifier).list;
 
         for (int i = list.size() - 1; i > 0; i--) {
@@ -216,13 +239,13 @@ public class FairQueue<T extends Queueable> {
         return list.size();
     }
 
-    public void skip(int number) {
+    public synchronized void skip(int number) {
         for (int i = 0; i < number; i++) {
             pull();
         }
     }
 
-    public int skipAll(long identifier) {
+    public synchronized int skipAll(long identifier) {
         List<T> list = getOrCreateQueue(identifier).list;
         repeatList.addAll(list);
         int size = list.size();
@@ -237,7 +260,7 @@ public class FairQueue<T extends Queueable> {
      * @param to   The new position of the item
      * @return the moved item
      */
-    public T moveItem(int from, int to) {
+    public synchronized T moveItem(int from, int to) {
         QueueIndex<T> listIndexFrom = localIndex(from);
         QueueIndex<T> listIndexTo = localIndex(to);
         List<T> list = userQueues.get(listIndexFrom.queue.identifier).list;
@@ -251,7 +274,7 @@ public class FairQueue<T extends Queueable> {
         return item;
     }
 
-    public void addTime(List<Long> identifiers, long time) {
+    public synchronized void addTime(List<Long> identifiers, long time) {
         time /= identifiers.size();
         for (long identifier : identifiers) {
             if (identifier == REPEAT_SENTINEL) {
@@ -264,11 +287,11 @@ public class FairQueue<T extends Queueable> {
         }
     }
 
-    public long getTime(long identifier) {
+    public synchronized long getTime(long identifier) {
         return getOrCreateQueue(identifier).elapsedTime;
     }
 
-    public void setEffectiveDifference(List<Long> identifiers, long timeDifference) {
+    public synchronized void setEffectiveDifference(List<Long> identifiers, long timeDifference) {
         timeDifference /= identifiers.size();
         for (long identifier : identifiers) {
             if (identifier == REPEAT_SENTINEL) {
@@ -280,7 +303,7 @@ public class FairQueue<T extends Queueable> {
         }
     }
 
-    public List<Long> getUsers() {
+    public synchronized List<Long> getUsers() {
         return userQueues.values().stream().sorted(Comparator.comparing(q -> q.elapsedTime))
                 .map(q -> (Long) q.identifier).collect(Collectors.toList());
     }
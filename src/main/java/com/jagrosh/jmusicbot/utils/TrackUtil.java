@@ -0,0 +1,32 @@
+package com.jagrosh.jmusicbot.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.DecodedTrackHolder;
+
+/**
+ * Turns tracks into bytes and back, for the caches and indexes that keep tracks around without their source.
+ */
+public class TrackUtil {
+    public static byte[] encode(DefaultAudioPlayerManager manager, AudioTrack track) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        manager.encodeTrack(new MessageOutput(stream), track);
+        return stream.toByteArray();
+    }
+
+    /**
+     * @return a new track, or an exception if the source it came from isn't registered anymore
+     */
+    public static AudioTrack decode(DefaultAudioPlayerManager manager, byte[] encoded) throws IOException {
+        DecodedTrackHolder holder = manager.decodeTrack(new MessageInput(new ByteArrayInputStream(encoded)));
+        if (holder == null || holder.decodedTrack == null)
+            throw new IOException("Source no longer available");
+        return holder.decodedTrack;
+    }
+}